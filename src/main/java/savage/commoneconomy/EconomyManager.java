@@ -7,6 +7,7 @@ import savage.commoneconomy.config.EconomyConfig;
 import savage.commoneconomy.config.WorthConfig;
 import savage.commoneconomy.storage.EconomyStorage;
 import savage.commoneconomy.storage.JsonStorage;
+import savage.commoneconomy.util.Money;
 
 import java.io.File;
 import java.io.FileReader;
@@ -16,6 +17,7 @@ import java.math.BigDecimal;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
 public class EconomyManager {
@@ -40,19 +42,28 @@ public class EconomyManager {
     }
 
     // Caching
-    private final com.github.benmanes.caffeine.cache.Cache<UUID, AccountData> accountCache;
+    // Empty values remember accounts that don't exist, see CacheConfig.negativeTtlSeconds
+    private final com.github.benmanes.caffeine.cache.LoadingCache<UUID, Optional<AccountData>> accountCache;
     private final com.github.benmanes.caffeine.cache.Cache<String, UUID> uuidCache;
     private final com.github.benmanes.caffeine.cache.Cache<String, java.util.List<String>> offlineNamesCache;
 
     private EconomyManager() {
         this.gson = new GsonBuilder().setPrettyPrinting().create();
         loadConfig();
+        Money.setScale(config.currencyScale);
         
         // Initialize Caches
-        this.accountCache = com.github.benmanes.caffeine.cache.Caffeine.newBuilder()
-                .maximumSize(10000)
-                .expireAfterWrite(10, java.util.concurrent.TimeUnit.MINUTES)
-                .build();
+        var accountCacheBuilder = com.github.benmanes.caffeine.cache.Caffeine.newBuilder()
+                .maximumWeight(config.cache.maximumSize)
+                .weigher((UUID uuid, Optional<AccountData> value) -> pinnedAccounts.contains(uuid) ? 0 : 1) // Pinned entries don't count towards the limit and are never evicted
+                .expireAfter(new AccountExpiry())
+                .executor(task -> storageExecutor.execute(task)) // Refreshes hit storage, keep them off the common pool
+                .recordStats();
+        if (config.cache.refreshAfterWriteSeconds > 0) {
+            // Frequently read accounts (online players) are reloaded in the background instead of expiring
+            accountCacheBuilder.refreshAfterWrite(config.cache.refreshAfterWriteSeconds, java.util.concurrent.TimeUnit.SECONDS);
+        }
+        this.accountCache = accountCacheBuilder.build(new AccountLoader());
                 
         this.uuidCache = com.github.benmanes.caffeine.cache.Caffeine.newBuilder()
                 .maximumSize(10000)
@@ -85,6 +96,9 @@ public class EconomyManager {
                     case "POSTGRESQL":
                         storage = new savage.commoneconomy.storage.PostgresStorage(this, config.storage.host, config.storage.port, config.storage.database, config.storage.user, config.storage.password, config.storage.tablePrefix);
                         break;
+                    case "MMAP":
+                        storage = new savage.commoneconomy.storage.MmapStorage(this);
+                        break;
                     default:
                         storage = new JsonStorage(this);
                         break;
@@ -92,6 +106,10 @@ public class EconomyManager {
                 // If successful, break loop
                 savage.commoneconomy.SavsCommonEconomy.LOGGER.info("Economy Storage initialized successfully: " + type);
                 break;
+            } catch (IllegalStateException e) {
+                // Misconfiguration, retrying won't help
+                savage.commoneconomy.SavsCommonEconomy.LOGGER.error("Could not initialize economy storage: " + e.getMessage());
+                throw e;
             } catch (Exception e) {
                 attempt++;
                 savage.commoneconomy.SavsCommonEconomy.LOGGER.warn("Failed to initialize economy storage (Attempt " + attempt + "/" + maxRetries + "). Retrying in 2 seconds...", e);
@@ -140,32 +158,202 @@ public class EconomyManager {
 
     public void load() {
         storage.load();
+        rebuildAccountIndexes();
+        if (isSellEnabled()) {
+            reloadWorthConfig(); // Compile prices now that the item registry is frozen
+        }
+        refreshLeaderboard();
+        startLeaderboardRefresher();
+        if (ledger == null && config.storage.writeBehind.enabled) {
+            ledger = new savage.commoneconomy.storage.WriteBehindLedger(storage, config.storage.writeBehind, this::onLedgerFlushed);
+        }
     }
 
     public void save() {
+        if (leaderboardRefresher != null) {
+            leaderboardRefresher.shutdownNow();
+            leaderboardRefresher = null;
+        }
+        drainStorageExecutor();
+        if (ledger != null) {
+            ledger.shutdown();
+            ledger = null;
+        }
         storage.save();
     }
 
-    public BigDecimal getBalance(UUID uuid) {
-        AccountData data = accountCache.getIfPresent(uuid);
-        if (data != null) {
-            return data.balance;
+    // Write-behind ledger for online players, null unless storage.writeBehind.enabled
+    private volatile savage.commoneconomy.storage.WriteBehindLedger ledger;
+
+    public savage.commoneconomy.storage.WriteBehindLedger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * @return whether the account's balance lives in the write-behind ledger, and reaches other servers only once flushed
+     */
+    public boolean isTracked(UUID uuid) {
+        return ledger != null && ledger.isTracked(uuid);
+    }
+
+    // Other servers only see tracked balances once they reach storage, so publish them from the flush
+    private void onLedgerFlushed(UUID uuid, long units) {
+        if (config.redis.enabled) {
+            savage.commoneconomy.util.RedisManager.getInstance().publishBalanceUpdate(uuid, Money.fromUnits(units));
         }
-        
-        // Cache miss, load from storage
-        BigDecimal balance = storage.getBalance(uuid);
-        // We need version to cache properly, but getBalance only returns BigDecimal.
-        // Ideally we should use getAccountData to populate cache.
-        // For now, let's fetch full data if possible, or just cache the balance with a dummy version/name if we can't get full data easily without changing storage interface again.
-        // Actually, we added getAccount to storage interface earlier!
-        data = storage.getAccount(uuid);
-        if (data != null) {
-            accountCache.put(uuid, data);
-            return data.balance;
-        } else {
-            // Account doesn't exist, return default but don't cache null unless we use Optional
-            return config.defaultBalance;
+    }
+
+    // Every account by balance, kept current by each balance change made through this class
+    private final savage.commoneconomy.util.RankIndex rankIndex = new savage.commoneconomy.util.RankIndex();
+    // Every account name, for tab completion
+    private final savage.commoneconomy.util.NameIndex nameIndex = new savage.commoneconomy.util.NameIndex();
+
+    /**
+     * Reloads the rank and name indexes from storage. Called on load.
+     */
+    public void rebuildAccountIndexes() {
+        Map<UUID, AccountData> accounts = new HashMap<>();
+        storage.forEachAccount(accounts::put);
+        rankIndex.rebuild(accounts);
+        nameIndex.clear();
+        for (Map.Entry<UUID, AccountData> account : accounts.entrySet()) {
+            if (account.getValue().name != null) {
+                nameIndex.put(account.getKey(), account.getValue().name);
+            }
+        }
+        savage.commoneconomy.SavsCommonEconomy.LOGGER.info("Ranked " + accounts.size() + " economy accounts");
+    }
+
+    /**
+     * Indexes the account's new state. Older versions than the indexed one are ignored; tracked
+     * accounts are read from the write-behind ledger instead, whose version only moves on flush.
+     */
+    private void updateRank(UUID uuid, AccountData data) {
+        savage.commoneconomy.storage.WriteBehindLedger current = ledger;
+        if (current == null || !rankIndex.sync(uuid, () -> current.getAccount(uuid))) {
+            rankIndex.update(uuid, data.name, data.units, data.version);
+        }
+        if (data.name != null) {
+            nameIndex.put(uuid, data.name);
+        }
+        onRankChanged();
+    }
+
+    // /baltop is served from this snapshot, rebuilt in the background
+    private volatile LeaderboardSnapshot leaderboard = new LeaderboardSnapshot(java.util.List.of(), 0, BigDecimal.ZERO);
+    private final java.util.concurrent.atomic.AtomicInteger leaderboardChanges = new java.util.concurrent.atomic.AtomicInteger();
+    private final java.util.concurrent.atomic.AtomicBoolean leaderboardQueued = new java.util.concurrent.atomic.AtomicBoolean();
+    private volatile java.util.concurrent.ScheduledExecutorService leaderboardRefresher;
+
+    private void onRankChanged() {
+        java.util.concurrent.ScheduledExecutorService refresher = leaderboardRefresher;
+        if (refresher != null && leaderboardChanges.incrementAndGet() >= config.baltop.refreshAfterChanges
+                && leaderboardQueued.compareAndSet(false, true)) {
+            refresher.execute(() -> {
+                leaderboardQueued.set(false);
+                refreshLeaderboard();
+            });
+        }
+    }
+
+    private void startLeaderboardRefresher() {
+        if (leaderboardRefresher != null) return;
+        leaderboardRefresher = java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "savs-economy-baltop");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, config.baltop.refreshIntervalSeconds);
+        leaderboardRefresher.scheduleWithFixedDelay(this::refreshLeaderboard, interval, interval, java.util.concurrent.TimeUnit.SECONDS);
+    }
+
+    /**
+     * Rebuilds the /baltop snapshot from the rank index.
+     */
+    public void refreshLeaderboard() {
+        try {
+            leaderboardChanges.set(0);
+            leaderboard = new LeaderboardSnapshot(rankIndex.range(0, Math.max(1, config.baltop.size)), rankIndex.size(), rankIndex.total());
+        } catch (Exception e) {
+            savage.commoneconomy.SavsCommonEconomy.LOGGER.error("Failed to refresh the balance leaderboard", e);
+        }
+    }
+
+    public LeaderboardSnapshot getLeaderboard() {
+        return leaderboard;
+    }
+
+    // Online players, their cache entries never expire or get evicted
+    private final java.util.Set<UUID> pinnedAccounts = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    // Last join/quit task per player, so a quick disconnect can't release before the join has tracked
+    private final Map<UUID, java.util.concurrent.CompletableFuture<Void>> sessionTasks = new java.util.concurrent.ConcurrentHashMap<>();
+
+    private java.util.concurrent.CompletableFuture<Void> runSessionTask(UUID uuid, Runnable task) {
+        java.util.concurrent.CompletableFuture<Void> future = sessionTasks.compute(uuid, (key, previous) -> previous == null
+                ? java.util.concurrent.CompletableFuture.runAsync(task, storageExecutor)
+                : previous.handle((result, t) -> null).thenRunAsync(task, storageExecutor)); // The previous caller reports its own failure
+        future.whenComplete((result, t) -> sessionTasks.remove(uuid, future));
+        return future;
+    }
+
+    /**
+     * Creates or renames the player's account and loads it in one async storage call,
+     * then keeps it pinned in the cache (and in the write-behind ledger) while they are online.
+     */
+    public java.util.concurrent.CompletableFuture<Void> onPlayerJoin(UUID uuid, String name) {
+        pinnedAccounts.add(uuid);
+        uuidCache.put(name.toLowerCase(), uuid);
+        savage.commoneconomy.storage.WriteBehindLedger current = ledger;
+        return runSessionTask(uuid, () -> {
+            AccountData data = storage.loadOrCreateAccount(uuid, name);
+            if (data == null) {
+                accountCache.invalidate(uuid);
+                return;
+            }
+            cacheAccount(uuid, data);
+            updateRank(uuid, data);
+            offlineNamesCache.invalidateAll();
+            if (current != null) {
+                current.track(uuid, data);
+            }
+        });
+    }
+
+    /**
+     * Unpins the player's account and flushes any pending write-behind changes.
+     */
+    public void onPlayerQuit(UUID uuid) {
+        pinnedAccounts.remove(uuid);
+        savage.commoneconomy.storage.WriteBehindLedger current = ledger;
+        runSessionTask(uuid, () -> {
+            if (current != null) {
+                current.release(uuid);
+                accountCache.invalidate(uuid); // Stored balance may be newer than the cached one
+            } else {
+                // Re-insert so the weigher and expiry see the entry as unpinned
+                accountCache.asMap().computeIfPresent(uuid, (key, value) -> value.isPresent() ? Optional.of(value.get()) : value);
+            }
+        });
+    }
+
+    public BigDecimal getBalance(UUID uuid) {
+        return Money.fromUnits(getBalanceUnits(uuid));
+    }
+
+    /**
+     * Balance in minor units, see {@link Money}.
+     */
+    public long getBalanceUnits(UUID uuid) {
+        if (ledger != null) {
+            AccountData tracked = ledger.getAccount(uuid);
+            if (tracked != null) {
+                return tracked.units;
+            }
         }
+
+        // One storage read on a miss, and unknown UUIDs are cached as missing
+        AccountData data = accountCache.get(uuid).orElse(null);
+        return data != null ? data.units : Money.toUnits(config.defaultBalance);
     }
 
     private net.minecraft.server.MinecraftServer server;
@@ -178,15 +366,122 @@ public class EconomyManager {
         return server;
     }
 
+    // Async API: storage work runs on virtual threads, callers hop back with getMainThreadExecutor()
+    private java.util.concurrent.ExecutorService storageExecutor = newStorageExecutor();
+
+    private static java.util.concurrent.ExecutorService newStorageExecutor() {
+        return java.util.concurrent.Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("savs-economy-storage-", 0).factory());
+    }
+
+    /**
+     * Waits for in-flight storage tasks so nothing is lost when the backend shuts down.
+     */
+    private void drainStorageExecutor() {
+        java.util.concurrent.ExecutorService executor = storageExecutor;
+        storageExecutor = newStorageExecutor(); // Keep accepting work if the server starts again (singleplayer)
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, java.util.concurrent.TimeUnit.SECONDS)) {
+                savage.commoneconomy.SavsCommonEconomy.LOGGER.warn("Timed out waiting for pending economy storage tasks");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Executor that runs tasks on the server thread, used to deliver async results to players.
+     */
+    public java.util.concurrent.Executor getMainThreadExecutor() {
+        return task -> {
+            if (server != null) {
+                server.execute(task);
+            } else {
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * Runs an arbitrary block of EconomyManager calls on the storage executor.
+     */
+    public <T> java.util.concurrent.CompletableFuture<T> supplyAsync(java.util.function.Supplier<T> task) {
+        return java.util.concurrent.CompletableFuture.supplyAsync(task, storageExecutor);
+    }
+
+    public java.util.concurrent.CompletableFuture<BigDecimal> getBalanceAsync(UUID uuid) {
+        return supplyAsync(() -> getBalance(uuid));
+    }
+
+    public java.util.concurrent.CompletableFuture<Void> setBalanceAsync(UUID uuid, BigDecimal amount) {
+        return setBalanceAsync(uuid, amount, true);
+    }
+
+    public java.util.concurrent.CompletableFuture<Void> setBalanceAsync(UUID uuid, BigDecimal amount, boolean publishToRedis) {
+        return java.util.concurrent.CompletableFuture.runAsync(() -> setBalance(uuid, amount, publishToRedis), storageExecutor);
+    }
+
+    public java.util.concurrent.CompletableFuture<Boolean> addBalanceAsync(UUID uuid, BigDecimal amount) {
+        return addBalanceAsync(uuid, amount, true);
+    }
+
+    public java.util.concurrent.CompletableFuture<Boolean> addBalanceAsync(UUID uuid, BigDecimal amount, boolean publishToRedis) {
+        return supplyAsync(() -> addBalance(uuid, amount, publishToRedis));
+    }
+
+    public java.util.concurrent.CompletableFuture<Boolean> removeBalanceAsync(UUID uuid, BigDecimal amount) {
+        return removeBalanceAsync(uuid, amount, true);
+    }
+
+    public java.util.concurrent.CompletableFuture<Boolean> removeBalanceAsync(UUID uuid, BigDecimal amount, boolean publishToRedis) {
+        return supplyAsync(() -> removeBalance(uuid, amount, publishToRedis));
+    }
+
+    public java.util.concurrent.CompletableFuture<TransferResult> transferAsync(UUID from, UUID to, BigDecimal amount) {
+        return transferAsync(from, to, amount, true);
+    }
+
+    public java.util.concurrent.CompletableFuture<TransferResult> transferAsync(UUID from, UUID to, BigDecimal amount, boolean publishToRedis) {
+        return supplyAsync(() -> transfer(from, to, amount, publishToRedis));
+    }
+
+    public java.util.concurrent.CompletableFuture<Void> createAccountAsync(UUID uuid, String name) {
+        return java.util.concurrent.CompletableFuture.runAsync(() -> createAccount(uuid, name), storageExecutor);
+    }
+
+    public java.util.concurrent.CompletableFuture<UUID> getUUIDAsync(String name) {
+        return supplyAsync(() -> getUUID(name));
+    }
+
     public void setBalance(UUID uuid, BigDecimal amount) {
         setBalance(uuid, amount, true);
     }
 
     public void setBalance(UUID uuid, BigDecimal amount, boolean publishToRedis) {
-        storage.setBalance(uuid, amount);
-        accountCache.invalidate(uuid); 
+        setBalanceUnits(uuid, Money.toUnits(amount), publishToRedis);
+    }
+
+    public void setBalanceUnits(UUID uuid, long units, boolean publishToRedis) {
+        if (ledger != null && ledger.setBalance(uuid, units)) {
+            accountCache.invalidate(uuid);
+            AccountData tracked = ledger.getAccount(uuid);
+            if (tracked != null) {
+                updateRank(uuid, tracked);
+            }
+            return; // Published once flushed
+        }
+        storage.setBalance(uuid, units);
+        // Read back the stored version so a slower, older result can't replace it in the cache
+        AccountData stored = storage.getAccount(uuid);
+        if (stored != null) {
+            cacheAccount(uuid, stored);
+            updateRank(uuid, stored);
+        } else {
+            accountCache.invalidate(uuid);
+        }
         if (publishToRedis && config.redis.enabled) {
-            savage.commoneconomy.util.RedisManager.getInstance().publishBalanceUpdate(uuid, amount);
+            savage.commoneconomy.util.RedisManager.getInstance().publishBalanceUpdate(uuid, Money.fromUnits(units));
         }
     }
 
@@ -195,40 +490,11 @@ public class EconomyManager {
     }
 
     public boolean addBalance(UUID uuid, BigDecimal amount, boolean publishToRedis) {
-        int retries = 10;
-        while (retries > 0) {
-            // Reload account data to get latest version
-            AccountData data = getAccountData(uuid); 
-            BigDecimal current = data != null ? data.balance : config.defaultBalance;
-            long version = data != null ? data.version : 0;
-            
-            if (storage.setBalance(uuid, current.add(amount), version)) {
-                // Update cache on success
-                if (data != null) {
-                    data.balance = current.add(amount);
-                    data.version++;
-                    accountCache.put(uuid, data);
-                } else {
-                    accountCache.invalidate(uuid);
-                }
-                
-                if (publishToRedis && config.redis.enabled) {
-                    savage.commoneconomy.util.RedisManager.getInstance().publishBalanceUpdate(uuid, current.add(amount));
-                }
-                
-                return true;
-            }
-            // On failure, invalidate cache to ensure we get fresh data from DB next retry
-            accountCache.invalidate(uuid);
-            
-            retries--;
-            try {
-                Thread.sleep(10 + (long)(Math.random() * 10)); // Small random backoff
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }
-        return false; // Failed after retries
+        return addBalanceUnits(uuid, Money.toUnits(amount), publishToRedis);
+    }
+
+    public boolean addBalanceUnits(UUID uuid, long units, boolean publishToRedis) {
+        return applyDelta(uuid, units, publishToRedis);
     }
 
     public boolean removeBalance(UUID uuid, BigDecimal amount) {
@@ -236,85 +502,252 @@ public class EconomyManager {
     }
 
     public boolean removeBalance(UUID uuid, BigDecimal amount, boolean publishToRedis) {
-        int retries = 10;
-        while (retries > 0) {
-            // Reload account data to get latest version
-            AccountData data = getAccountData(uuid);
-            BigDecimal current = data != null ? data.balance : config.defaultBalance;
-            long version = data != null ? data.version : 0;
-            
-            if (current.compareTo(amount) >= 0) {
-                if (storage.setBalance(uuid, current.subtract(amount), version)) {
-                     // Update cache on success
-                    if (data != null) {
-                        data.balance = current.subtract(amount);
-                        data.version++;
-                        accountCache.put(uuid, data);
-                    } else {
-                        accountCache.invalidate(uuid);
-                    }
-                    
-                    if (publishToRedis && config.redis.enabled) {
-                        savage.commoneconomy.util.RedisManager.getInstance().publishBalanceUpdate(uuid, current.subtract(amount));
-                    }
-                    
-                    return true;
-                }
-            } else {
-                return false; // Insufficient funds
-            }
-            // On failure, invalidate cache
+        return removeBalanceUnits(uuid, Money.toUnits(amount), publishToRedis);
+    }
+
+    public boolean removeBalanceUnits(UUID uuid, long units, boolean publishToRedis) {
+        return applyDelta(uuid, -units, publishToRedis);
+    }
+
+    /**
+     * Single server-side update, no read-modify-write and therefore nothing to retry.
+     */
+    private boolean applyDelta(UUID uuid, long delta, boolean publishToRedis) {
+        boolean tracked = isTracked(uuid);
+        AccountData data = ledger != null ? ledger.applyDelta(uuid, delta) : storage.applyDelta(uuid, delta);
+        deltaUpdates.incrementAndGet();
+        if (data == null) {
             accountCache.invalidate(uuid);
-            
-            retries--;
-            try {
-                Thread.sleep(10 + (long)(Math.random() * 10)); // Small random backoff
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            return false; // Insufficient funds, overflow or no account
+        }
+
+        if (!tracked) {
+            cacheAccount(uuid, data);
+        }
+        updateRank(uuid, data);
+        if (publishToRedis && !tracked && config.redis.enabled) {
+            savage.commoneconomy.util.RedisManager.getInstance().publishBalanceUpdate(uuid, data.balance());
+        }
+        return true;
+    }
+
+    public Map<UUID, AccountData> applyBatch(java.util.List<BalanceDelta> deltas, boolean atomic) {
+        return applyBatch(deltas, atomic, true);
+    }
+
+    /**
+     * Applies many balance changes with one storage write and one Redis message.
+     * Deltas for the same account are combined first. With {@code atomic} set, a single
+     * refused debit cancels the whole batch; otherwise refused entries are left out of the result.
+     *
+     * @return the updated accounts, or null if an atomic batch was refused or the write failed
+     */
+    public Map<UUID, AccountData> applyBatch(java.util.List<BalanceDelta> deltas, boolean atomic, boolean publishToRedis) {
+        Map<UUID, Long> combined = new java.util.LinkedHashMap<>();
+        for (BalanceDelta delta : deltas) {
+            combined.merge(delta.uuid, Money.toUnits(delta.amount), Math::addExact);
+        }
+        if (combined.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        java.util.Set<UUID> tracked = new java.util.HashSet<>();
+        for (UUID uuid : combined.keySet()) {
+            if (isTracked(uuid)) {
+                tracked.add(uuid);
             }
         }
-        return false; // Failed after retries
+        Map<UUID, AccountData> result = ledger != null ? ledger.applyBatch(combined, atomic) : storage.applyBatch(combined, atomic);
+        deltaUpdates.addAndGet(combined.size());
+        if (result == null) {
+            combined.keySet().forEach(accountCache::invalidate);
+            return null;
+        }
+
+        Map<UUID, BigDecimal> published = new java.util.LinkedHashMap<>();
+        for (UUID uuid : combined.keySet()) {
+            AccountData data = result.get(uuid);
+            if (data == null) {
+                accountCache.invalidate(uuid);
+                continue;
+            }
+            updateRank(uuid, data);
+            if (!tracked.contains(uuid)) {
+                cacheAccount(uuid, data);
+                published.put(uuid, data.balance());
+            }
+        }
+        if (publishToRedis && config.redis.enabled) {
+            savage.commoneconomy.util.RedisManager.getInstance().publishBatchUpdate(published, "BATCH", null);
+        }
+        return result;
+    }
+
+    public java.util.concurrent.CompletableFuture<Map<UUID, AccountData>> applyBatchAsync(java.util.List<BalanceDelta> deltas, boolean atomic) {
+        return supplyAsync(() -> applyBatch(deltas, atomic));
+    }
+
+    // Update stats, surfaced through /ecodebug stats
+    private final java.util.concurrent.atomic.AtomicLong deltaUpdates = new java.util.concurrent.atomic.AtomicLong();
+
+    public long getDeltaUpdates() {
+        return deltaUpdates.get();
+    }
+
+    public TransferResult transfer(UUID from, UUID to, BigDecimal amount) {
+        return transfer(from, to, amount, true);
+    }
+
+    /**
+     * Moves money between two accounts in one storage round trip.
+     * Returns the resulting state of both accounts, or null on insufficient funds or failure.
+     */
+    public TransferResult transfer(UUID from, UUID to, BigDecimal amount, boolean publishToRedis) {
+        return transferUnits(from, to, Money.toUnits(amount), publishToRedis);
+    }
+
+    public TransferResult transferUnits(UUID from, UUID to, long units, boolean publishToRedis) {
+        if (units < 0 || from.equals(to)) {
+            return null;
+        }
+
+        boolean fromTracked = isTracked(from);
+        boolean toTracked = isTracked(to);
+        TransferResult result = ledger != null ? ledger.transfer(from, to, units) : storage.transfer(from, to, units);
+        if (result == null) {
+            // Our cached view may be stale, make the next read go to storage
+            accountCache.invalidate(from);
+            accountCache.invalidate(to);
+            return null;
+        }
+
+        if (!fromTracked) {
+            cacheAccount(from, result.from);
+        }
+        if (!toTracked) {
+            cacheAccount(to, result.to);
+        }
+        updateRank(from, result.from);
+        updateRank(to, result.to);
+
+        if (publishToRedis && config.redis.enabled) {
+            if (!fromTracked) {
+                savage.commoneconomy.util.RedisManager.getInstance().publishBalanceUpdate(from, result.from.balance());
+            }
+            if (!toTracked) {
+                savage.commoneconomy.util.RedisManager.getInstance().publishBalanceUpdate(to, result.to.balance());
+            }
+        }
+        return result;
     }
     
+    /**
+     * Caches a result from storage. Operations on one account run concurrently and can finish out of
+     * order, so an older version never replaces a newer one. Results served by the write-behind ledger
+     * must not be passed here: reads of tracked accounts go to the ledger, and its versions only
+     * advance on flush.
+     */
+    private void cacheAccount(UUID uuid, AccountData data) {
+        accountCache.asMap().merge(uuid, Optional.of(data), (current, updated) ->
+                current.isPresent() && current.get().version > updated.get().version ? current : updated);
+    }
+
     private AccountData getAccountData(UUID uuid) {
-        AccountData data = accountCache.getIfPresent(uuid);
-        if (data != null) {
-            return data;
+        if (ledger != null) {
+            AccountData tracked = ledger.getAccount(uuid);
+            if (tracked != null) {
+                return tracked;
+            }
         }
-        
-        data = storage.getAccount(uuid);
-        if (data != null) {
-            accountCache.put(uuid, data);
+
+        return accountCache.get(uuid).orElse(null);
+    }
+
+    /**
+     * Loads several accounts, fetching all cache misses from storage in one query.
+     * Missing accounts are left out of the result.
+     */
+    public Map<UUID, AccountData> getAccounts(java.util.Collection<UUID> uuids) {
+        Map<UUID, AccountData> result = new HashMap<>();
+        for (Map.Entry<UUID, Optional<AccountData>> entry : accountCache.getAll(uuids).entrySet()) {
+            entry.getValue().ifPresent(data -> result.put(entry.getKey(), data));
+        }
+        if (ledger != null) {
+            for (UUID uuid : uuids) {
+                AccountData tracked = ledger.getAccount(uuid);
+                if (tracked != null) {
+                    result.put(uuid, tracked);
+                }
+            }
         }
-        return data;
+        return result;
+    }
+
+    public com.github.benmanes.caffeine.cache.stats.CacheStats getAccountCacheStats() {
+        return accountCache.stats();
+    }
+
+    public long getAccountCacheSize() {
+        return accountCache.estimatedSize();
     }
 
     public boolean hasAccount(UUID uuid) {
-        if (accountCache.getIfPresent(uuid) != null) return true;
-        return storage.hasAccount(uuid);
+        return isTracked(uuid) || accountCache.get(uuid).isPresent();
     }
 
     public void createAccount(UUID uuid, String name) {
         storage.createAccount(uuid, name);
         // Cache the new account
-        accountCache.put(uuid, new AccountData(name, config.defaultBalance, 0));
+        AccountData created = new AccountData(name, config.defaultBalance, 0);
+        cacheAccount(uuid, created);
+        updateRank(uuid, created);
         uuidCache.put(name.toLowerCase(), uuid);
         offlineNamesCache.invalidateAll(); // Invalidate names list
     }
 
     public void deleteAccount(UUID uuid) {
+        Optional<AccountData> cached = accountCache.getIfPresent(uuid);
         storage.deleteAccount(uuid);
         // Invalidate all caches
-        accountCache.invalidate(uuid);
-        AccountData data = accountCache.getIfPresent(uuid);
-        if (data != null) {
-            uuidCache.invalidate(data.name.toLowerCase());
+        accountCache.put(uuid, Optional.empty());
+        rankIndex.remove(uuid);
+        nameIndex.remove(uuid);
+        onRankChanged();
+        if (cached != null && cached.isPresent()) {
+            uuidCache.invalidate(cached.get().name.toLowerCase());
         }
         offlineNamesCache.invalidateAll();
     }
     
+    /**
+     * Drops the cached account after another server changed it to {@code balance}.
+     * The message carries no version, so the rank index is updated from a fresh read instead.
+     */
+    public void invalidateCache(UUID uuid, BigDecimal balance) {
+        invalidateCache(uuid, balance != null);
+    }
+
     public void invalidateCache(UUID uuid) {
+        invalidateCache(uuid, false);
+    }
+
+    private void invalidateCache(UUID uuid, boolean rerank) {
         accountCache.invalidate(uuid);
+        boolean tracked = isTracked(uuid);
+        if (!tracked && !rerank) return;
+        savage.commoneconomy.storage.WriteBehindLedger current = ledger;
+        java.util.concurrent.CompletableFuture.runAsync(() -> {
+            if (tracked) {
+                // Pick up the other server's change underneath our pending deltas
+                current.refresh(uuid);
+            }
+            if (rerank) {
+                AccountData data = getAccountData(uuid);
+                if (data != null) {
+                    updateRank(uuid, data);
+                }
+            }
+        }, storageExecutor);
     }
 
     public void resetBalance(UUID uuid) {
@@ -341,6 +774,13 @@ public class EconomyManager {
         return names;
     }
 
+    /**
+     * @return up to {@code limit} account names starting with {@code prefix}, ignoring case, in alphabetical order
+     */
+    public java.util.List<String> completePlayerNames(String prefix, int limit) {
+        return nameIndex.complete(prefix, limit);
+    }
+
     public String format(BigDecimal amount) {
         if (config.symbolBeforeAmount) {
             return config.currencySymbol + amount.toString();
@@ -349,56 +789,151 @@ public class EconomyManager {
         }
     }
 
-    // Leaderboard support
+    // Leaderboard support, served from the rank index
     public java.util.List<AccountData> getTopAccounts(int limit) {
-        return storage.getTopAccounts(limit);
+        java.util.List<AccountData> top = new java.util.ArrayList<>();
+        for (savage.commoneconomy.util.RankIndex.Entry entry : rankIndex.range(0, limit)) {
+            top.add(new AccountData(entry.name, entry.units, 0));
+        }
+        return top;
+    }
+
+    /**
+     * @param offset 0 for the richest account
+     */
+    public java.util.List<savage.commoneconomy.util.RankIndex.Entry> getRanking(int offset, int limit) {
+        return rankIndex.range(offset, limit);
+    }
+
+    /**
+     * @return the account's position by balance, 1 for the richest, or 0 if it has no account
+     */
+    public int getRank(UUID uuid) {
+        return rankIndex.rank(uuid);
+    }
+
+    public int getRankedAccountCount() {
+        return rankIndex.size();
     }
 
-    // Sell system support
-    private WorthConfig worthConfig;
+    // Sell system support, prices compiled from worth.json and replaced as a whole on reload
+    private volatile savage.commoneconomy.util.PriceTable priceTable;
 
     public boolean isSellEnabled() {
         return config != null && config.enableSellCommands;
     }
 
+    /**
+     * @return the price of one item of the stack, including component prices, zero if it can't be sold
+     */
+    public BigDecimal getItemPrice(net.minecraft.item.ItemStack stack) {
+        return getPriceTable().get(stack);
+    }
+
     public BigDecimal getItemPrice(String itemId) {
-        if (worthConfig == null) {
-            loadWorthConfig();
-        }
-        return worthConfig.itemPrices.getOrDefault(itemId, BigDecimal.ZERO);
+        return getPriceTable().get(itemId);
     }
 
+    /**
+     * @return every base item price by item id, read-only
+     */
     public Map<String, BigDecimal> getAllItemPrices() {
+        return getPriceTable().all();
+    }
+
+    private savage.commoneconomy.util.PriceTable getPriceTable() {
+        savage.commoneconomy.util.PriceTable table = priceTable;
+        if (table == null) {
+            reloadWorthConfig();
+            table = priceTable;
+        }
+        return table;
+    }
+
+    /**
+     * Reads worth.json again and swaps in the compiled prices. Keeps the current prices if the file can't be read.
+     *
+     * @return false if worth.json couldn't be read or parsed
+     */
+    public synchronized boolean reloadWorthConfig() {
+        WorthConfig worthConfig = loadWorthConfig();
         if (worthConfig == null) {
-            loadWorthConfig();
+            if (priceTable == null) {
+                priceTable = savage.commoneconomy.util.PriceTable.compile(new WorthConfig(), null);
+            }
+            return false;
         }
-        return new HashMap<>(worthConfig.itemPrices);
+        priceTable = savage.commoneconomy.util.PriceTable.compile(worthConfig, server != null ? server.getRegistryManager() : null);
+        return true;
     }
 
-    private void loadWorthConfig() {
+    private WorthConfig loadWorthConfig() {
         Path worthPath = FabricLoader.getInstance().getConfigDir().resolve("savs-common-economy").resolve("worth.json");
         File worthFile = worthPath.toFile();
 
         if (!worthFile.exists()) {
-            this.worthConfig = new WorthConfig();
+            WorthConfig worthConfig = new WorthConfig();
             try (FileWriter writer = new FileWriter(worthFile)) {
-                gson.toJson(this.worthConfig, writer);
+                gson.toJson(worthConfig, writer);
             } catch (IOException e) {
                 e.printStackTrace();
             }
-        } else {
-            try (FileReader reader = new FileReader(worthFile)) {
-                this.worthConfig = gson.fromJson(reader, WorthConfig.class);
-            } catch (IOException e) {
-                e.printStackTrace();
-                this.worthConfig = new WorthConfig();
+            return worthConfig;
+        }
+        try (FileReader reader = new FileReader(worthFile)) {
+            return gson.fromJson(reader, WorthConfig.class);
+        } catch (IOException | com.google.gson.JsonParseException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private class AccountLoader implements com.github.benmanes.caffeine.cache.CacheLoader<UUID, Optional<AccountData>> {
+        @Override
+        public Optional<AccountData> load(UUID uuid) {
+            return Optional.ofNullable(storage.getAccount(uuid));
+        }
+
+        @Override
+        public Map<UUID, Optional<AccountData>> loadAll(java.util.Set<? extends UUID> uuids) {
+            Map<UUID, AccountData> found = storage.getAccounts(new java.util.ArrayList<>(uuids));
+            Map<UUID, Optional<AccountData>> result = new HashMap<>();
+            for (UUID uuid : uuids) {
+                result.put(uuid, Optional.ofNullable(found.get(uuid)));
             }
+            return result;
+        }
+    }
+
+    // Missing accounts expire sooner so new accounts created elsewhere show up quickly
+    private class AccountExpiry implements com.github.benmanes.caffeine.cache.Expiry<UUID, Optional<AccountData>> {
+        private long ttl(UUID uuid, Optional<AccountData> value) {
+            if (pinnedAccounts.contains(uuid)) {
+                return Long.MAX_VALUE;
+            }
+            long seconds = value.isPresent() ? config.cache.expireAfterWriteSeconds : config.cache.negativeTtlSeconds;
+            return java.util.concurrent.TimeUnit.SECONDS.toNanos(seconds);
+        }
+
+        @Override
+        public long expireAfterCreate(UUID uuid, Optional<AccountData> value, long currentTime) {
+            return ttl(uuid, value);
+        }
+
+        @Override
+        public long expireAfterUpdate(UUID uuid, Optional<AccountData> value, long currentTime, long currentDuration) {
+            return ttl(uuid, value);
+        }
+
+        @Override
+        public long expireAfterRead(UUID uuid, Optional<AccountData> value, long currentTime, long currentDuration) {
+            return currentDuration;
         }
     }
 
     public static class AccountData {
         public String name;
-        public BigDecimal balance;
+        public long units; // Balance in minor units, see Money
         public long version;
 
         public AccountData(String name, BigDecimal balance) {
@@ -406,9 +941,66 @@ public class EconomyManager {
         }
 
         public AccountData(String name, BigDecimal balance, long version) {
+            this(name, Money.toUnits(balance), version);
+        }
+
+        public AccountData(String name, long units, long version) {
             this.name = name;
-            this.balance = balance;
+            this.units = units;
             this.version = version;
         }
+
+        public BigDecimal balance() {
+            return Money.fromUnits(units);
+        }
+    }
+
+    /**
+     * The top accounts at one point in time, with totals over every account.
+     */
+    public static class LeaderboardSnapshot {
+        public final java.util.List<savage.commoneconomy.util.RankIndex.Entry> entries;
+        public final int accountCount;
+        public final BigDecimal total;
+        public final long createdAt = System.currentTimeMillis();
+
+        public LeaderboardSnapshot(java.util.List<savage.commoneconomy.util.RankIndex.Entry> entries, int accountCount, BigDecimal total) {
+            this.entries = entries;
+            this.accountCount = accountCount;
+            this.total = total;
+        }
+
+        public int pageCount(int pageSize) {
+            return Math.max(1, (entries.size() + pageSize - 1) / pageSize);
+        }
+
+        public java.util.List<savage.commoneconomy.util.RankIndex.Entry> page(int page, int pageSize) {
+            int from = Math.min((page - 1) * pageSize, entries.size());
+            return entries.subList(from, Math.min(from + pageSize, entries.size()));
+        }
+
+        public long ageSeconds() {
+            return (System.currentTimeMillis() - createdAt) / 1000;
+        }
+    }
+
+    public static class BalanceDelta {
+        public final UUID uuid;
+        public final BigDecimal amount; // Negative to debit
+
+        public BalanceDelta(UUID uuid, BigDecimal amount) {
+            this.uuid = uuid;
+            this.amount = amount;
+        }
+    }
+
+    public static class TransferResult {
+        public final AccountData from;
+        public final AccountData to;
+
+        public TransferResult(AccountData from, AccountData to) {
+            this.from = from;
+            this.to = to;
+        }
     }
 }
@@ -40,6 +40,7 @@ public class SavsCommonEconomy implements ModInitializer {
 			EconomyManager.getInstance().initStorage();
 			EconomyManager.getInstance().setServer(server);
 			EconomyManager.getInstance().load();
+			savage.commoneconomy.util.TransactionLogger.start();
 			if (EconomyManager.getInstance().getConfig().enableChestShops) {
 				ShopManager.getInstance().load();
 			}
@@ -52,17 +53,22 @@ public class SavsCommonEconomy implements ModInitializer {
 
 		// Save economy data when server stops
 		ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+			// Flush queued log entries while storage is still open
+			savage.commoneconomy.util.TransactionLogger.shutdown();
 			EconomyManager.getInstance().save();
 			if (EconomyManager.getInstance().getConfig().enableChestShops) {
 				ShopManager.getInstance().save();
 			}
 		});
 		
-		// Create account on join
+		// Create and load the account off the server thread on join
 		ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
-			if (!EconomyManager.getInstance().hasAccount(handler.player.getUuid())) {
-				EconomyManager.getInstance().createAccount(handler.player.getUuid(), handler.player.getName().getString());
-			}
+			EconomyManager.getInstance().onPlayerJoin(handler.player.getUuid(), handler.player.getName().getString());
+		});
+
+		// Unpin the account and flush write-behind balances when a player leaves
+		ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+			EconomyManager.getInstance().onPlayerQuit(handler.player.getUuid());
 		});
 		
 		// Register right-click handler for bank notes
@@ -76,10 +82,23 @@ public class SavsCommonEconomy implements ModInitializer {
 						if (nbt.contains("EconomyBankNote") && nbt.contains("Value")) {
 							double valueDouble = nbt.getDouble("Value").orElse(0.0);
 							java.math.BigDecimal value = java.math.BigDecimal.valueOf(valueDouble);
-							EconomyManager.getInstance().addBalance(player.getUuid(), value);
-							player.sendMessage(net.minecraft.text.Text.literal("Redeemed bank note for " + EconomyManager.getInstance().format(value)).formatted(net.minecraft.util.Formatting.GREEN), true);
-							savage.commoneconomy.util.TransactionLogger.log("DEPOSIT", "Bank Note", player.getName().getString(), value, "Redeemed Note");
+							
+							// Consume the note up front, hand it back if the deposit fails
+							net.minecraft.item.ItemStack note = stack.copyWithCount(1);
 							stack.decrement(1);
+							EconomyManager.getInstance().addBalanceAsync(player.getUuid(), value)
+								.handleAsync((success, error) -> {
+									if (error != null) {
+										LOGGER.error("Failed to redeem bank note", error);
+									}
+									if (error != null || !success) {
+										player.getInventory().offerOrDrop(note);
+										return null;
+									}
+									player.sendMessage(net.minecraft.text.Text.literal("Redeemed bank note for " + EconomyManager.getInstance().format(value)).formatted(net.minecraft.util.Formatting.GREEN), true);
+									savage.commoneconomy.util.TransactionLogger.log("DEPOSIT", "Bank Note", player.getName().getString(), value, "Redeemed Note");
+									return null;
+								}, EconomyManager.getInstance().getMainThreadExecutor());
 							return net.minecraft.util.ActionResult.SUCCESS;
 						}
 					}
@@ -213,21 +232,24 @@ public class SavsCommonEconomy implements ModInitializer {
 					// If shop is selling, player is buying from it
 					else {
 						if (isAll) {
-							// Calculate max player can afford / shop has
-							java.math.BigDecimal balance = EconomyManager.getInstance().getBalance(sender.getUuid());
-							int canAfford = balance.divideToIntegralValue(shop.getPrice()).intValue();
-							int shopHas = shop.isAdmin() ? Integer.MAX_VALUE : shop.getStock();
-							amount = Math.min(canAfford, shopHas);
-							
-							// Also limit by inventory space (approximate)
-							// For now, let's just cap at a reasonable stack limit if 'all' is huge
-							if (amount > 2304) amount = 2304; // 36 stacks (full inventory)
-						}
-						
-						if (amount > 0) {
-							savage.commoneconomy.shop.ShopTransactionHandler.handleBuyTransaction((net.minecraft.server.world.ServerWorld) sender.getEntityWorld(), sender, shop, amount);
+							// Balance lookup may hit the database, finish the purchase once it's back on the server thread
+							EconomyManager.getInstance().getBalanceAsync(sender.getUuid())
+								.thenAcceptAsync(balance -> {
+									// Calculate max player can afford / shop has
+									int canAfford = balance.divideToIntegralValue(shop.getPrice()).intValue();
+									int shopHas = shop.isAdmin() ? Integer.MAX_VALUE : shop.getStock();
+									
+									// Also limit by inventory space (approximate)
+									// For now, let's just cap at a reasonable stack limit if 'all' is huge
+									int maxAmount = Math.min(Math.min(canAfford, shopHas), 2304); // 36 stacks (full inventory)
+									startBuyTransaction(sender, shop, maxAmount);
+								}, EconomyManager.getInstance().getMainThreadExecutor())
+								.exceptionally(t -> {
+									LOGGER.error("Failed to look up balance for shop purchase", t);
+									return null;
+								});
 						} else {
-							sender.sendMessage(net.minecraft.text.Text.literal("§c您的余额不足或物品已经售空!"), false);
+							startBuyTransaction(sender, shop, amount);
 						}
 					}
 					
@@ -357,4 +379,12 @@ public class SavsCommonEconomy implements ModInitializer {
 			});
 		}
 	}
+
+	private static void startBuyTransaction(net.minecraft.server.network.ServerPlayerEntity player, savage.commoneconomy.shop.Shop shop, int amount) {
+		if (amount > 0) {
+			savage.commoneconomy.shop.ShopTransactionHandler.handleBuyTransaction((net.minecraft.server.world.ServerWorld) player.getEntityWorld(), player, shop, amount);
+		} else {
+			player.sendMessage(net.minecraft.text.Text.literal("§c您的余额不足或物品已经售空!"), false);
+		}
+	}
 }
@@ -26,6 +26,8 @@ public class DebugCommands {
                         .executes(DebugCommands::runVerification))
                 .then(CommandManager.literal("cleanup")
                         .executes(DebugCommands::runCleanup))
+                .then(CommandManager.literal("stats")
+                        .executes(DebugCommands::showStats))
                 .then(CommandManager.literal("api")
                         .executes(context -> {
                             try {
@@ -83,6 +85,7 @@ public class DebugCommands {
         AtomicInteger successCount = new AtomicInteger(0);
 
         long startTime = System.currentTimeMillis();
+        long retriesBefore = savage.commoneconomy.storage.CasFallback.getRetries();
 
         for (int i = 0; i < threadCount; i++) {
             executor.submit(() -> {
@@ -107,12 +110,14 @@ public class DebugCommands {
         }
 
         long duration = System.currentTimeMillis() - startTime;
+        long retries = savage.commoneconomy.storage.CasFallback.getRetries() - retriesBefore;
         BigDecimal finalBalance = manager.getBalance(TEST_UUID);
         
 
         source.sendFeedback(() -> Text.literal("Verification completed in " + duration + "ms"), false);
         source.sendFeedback(() -> Text.literal("Threads: " + threadCount + ", Updates/Thread: " + updatesPerThread), false);
         source.sendFeedback(() -> Text.literal("Successful Updates: " + successCount.get() + "/" + (threadCount * updatesPerThread)), false);
+        source.sendFeedback(() -> Text.literal("CAS Fallback Retries: " + retries), false);
         source.sendFeedback(() -> Text.literal("Final Balance: " + finalBalance + " (Expected for successes: " + amountPerUpdate.multiply(BigDecimal.valueOf(successCount.get())) + ")"), false);
 
         BigDecimal expectedForSuccesses = amountPerUpdate.multiply(BigDecimal.valueOf(successCount.get()));
@@ -136,6 +141,43 @@ public class DebugCommands {
         return 1;
     }
     
+    private static int showStats(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        EconomyManager manager = EconomyManager.getInstance();
+
+        source.sendFeedback(() -> Text.literal("--- Economy Update Stats ---"), false);
+        source.sendFeedback(() -> Text.literal("Delta Updates: " + manager.getDeltaUpdates()), false);
+        source.sendFeedback(() -> Text.literal("CAS Fallback Updates: " + savage.commoneconomy.storage.CasFallback.getUpdates()
+                + ", Retries: " + savage.commoneconomy.storage.CasFallback.getRetries()
+                + ", Failures (retries exhausted): " + savage.commoneconomy.storage.CasFallback.getFailures()), false);
+
+        var ledger = manager.getLedger();
+        if (ledger != null) {
+            source.sendFeedback(() -> Text.literal("Write-Behind: " + ledger.getTrackedCount() + " tracked, " + ledger.getDirtyCount() + " dirty"), false);
+            source.sendFeedback(() -> Text.literal("Write-Behind Flushes: " + ledger.getFlushCount() + " (" + ledger.getFlushedAccountCount() + " account writes)"), false);
+        } else {
+            source.sendFeedback(() -> Text.literal("Write-Behind: disabled"), false);
+        }
+
+        source.sendFeedback(() -> Text.literal("--- Transaction Log ---"), false);
+        source.sendFeedback(() -> Text.literal("Queued: " + savage.commoneconomy.util.TransactionLogger.getQueuedCount() + "/" + savage.commoneconomy.util.TransactionLogger.getQueueCapacity()
+                + ", Written: " + savage.commoneconomy.util.TransactionLogger.getWrittenCount() + " in " + savage.commoneconomy.util.TransactionLogger.getBatchCount() + " batches"), false);
+        source.sendFeedback(() -> Text.literal("Spilled: " + savage.commoneconomy.util.TransactionLogger.getSpilledCount() + ", Dropped: " + savage.commoneconomy.util.TransactionLogger.getDroppedCount()), false);
+        var recent = savage.commoneconomy.util.TransactionLogger.getRecent();
+        if (recent != null) {
+            source.sendFeedback(() -> Text.literal(String.format("Recent Hit Rate: %.1f%% (%d hits, %d misses)", recent.getHitRate() * 100, recent.getHitCount(), recent.getMissCount())), false);
+        } else {
+            source.sendFeedback(() -> Text.literal("Recent: disabled"), false);
+        }
+
+        var cache = manager.getAccountCacheStats();
+        source.sendFeedback(() -> Text.literal("--- Account Cache ---"), false);
+        source.sendFeedback(() -> Text.literal("Entries: " + manager.getAccountCacheSize() + ", Evictions: " + cache.evictionCount()), false);
+        source.sendFeedback(() -> Text.literal(String.format("Hit Rate: %.1f%% (%d hits, %d misses)", cache.hitRate() * 100, cache.hitCount(), cache.missCount())), false);
+        source.sendFeedback(() -> Text.literal(String.format("Loads: %d (%d failed), avg %.2fms", cache.loadCount(), cache.loadFailureCount(), cache.averageLoadPenalty() / 1_000_000.0)), false);
+        return 1;
+    }
+    
     private static int runCleanup(CommandContext<ServerCommandSource> context) {
         ServerCommandSource source = context.getSource();
         EconomyManager manager = EconomyManager.getInstance();
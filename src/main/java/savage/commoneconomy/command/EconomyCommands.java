@@ -2,30 +2,40 @@ package savage.commoneconomy.command;
 
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.DoubleArgumentType;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
 import net.minecraft.command.CommandSource;
+import net.minecraft.command.argument.EntityArgumentType;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
 import savage.commoneconomy.EconomyManager;
+import savage.commoneconomy.util.Money;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class EconomyCommands {
 
+    // Offline names suggested per keystroke; the client only shows a handful anyway
+    private static final int MAX_NAME_SUGGESTIONS = 50;
+
     private static final SuggestionProvider<ServerCommandSource> PLAYER_SUGGESTION_PROVIDER = (context, builder) -> {
         List<String> suggestions = new ArrayList<>();
         // Add online players
         suggestions.addAll(context.getSource().getPlayerNames());
-        // Add offline players from cache
-        suggestions.addAll(EconomyManager.getInstance().getOfflinePlayerNames());
+        // Add offline players starting with what has been typed so far
+        suggestions.addAll(EconomyManager.getInstance().completePlayerNames(builder.getRemaining(), MAX_NAME_SUGGESTIONS));
         return CommandSource.suggestMatching(suggestions, builder);
     };
 
@@ -48,7 +58,11 @@ public class EconomyCommands {
                 .then(CommandManager.argument("target", StringArgumentType.string())
                         .suggests(PLAYER_SUGGESTION_PROVIDER)
                         .then(CommandManager.argument("amount", DoubleArgumentType.doubleArg(0))
-                                .executes(EconomyCommands::giveMoney))));
+                                .executes(EconomyCommands::giveMoney)))
+                // Selectors such as @a, credited in one batch
+                .then(CommandManager.argument("targets", EntityArgumentType.players())
+                        .then(CommandManager.argument("amount", DoubleArgumentType.doubleArg(0))
+                                .executes(EconomyCommands::giveMoneyToPlayers))));
 
         dispatcher.register(CommandManager.literal("takemoney")
                 .requires(source -> savage.commoneconomy.util.PermissionsHelper.check(source, "savscommoneconomy.admin", 2))
@@ -72,10 +86,21 @@ public class EconomyCommands {
 
         dispatcher.register(CommandManager.literal("baltop")
                 .requires(source -> savage.commoneconomy.util.PermissionsHelper.check(source, "savscommoneconomy.command.baltop", true))
-                .executes(EconomyCommands::balTop));
+                .executes(context -> balTop(context, 1))
+                .then(CommandManager.argument("page", IntegerArgumentType.integer(1))
+                        .executes(context -> balTop(context, IntegerArgumentType.getInteger(context, "page")))));
         dispatcher.register(CommandManager.literal("balancetop")
                 .requires(source -> savage.commoneconomy.util.PermissionsHelper.check(source, "savscommoneconomy.command.baltop", true))
-                .executes(EconomyCommands::balTop));
+                .executes(context -> balTop(context, 1))
+                .then(CommandManager.argument("page", IntegerArgumentType.integer(1))
+                        .executes(context -> balTop(context, IntegerArgumentType.getInteger(context, "page")))));
+
+        dispatcher.register(CommandManager.literal("balrank")
+                .requires(source -> savage.commoneconomy.util.PermissionsHelper.check(source, "savscommoneconomy.command.balrank", true))
+                .executes(EconomyCommands::checkSelfRank)
+                .then(CommandManager.argument("target", StringArgumentType.string())
+                        .suggests(PLAYER_SUGGESTION_PROVIDER)
+                        .executes(EconomyCommands::checkOtherRank)));
 
         dispatcher.register(CommandManager.literal("pay")
                 .requires(source -> savage.commoneconomy.util.PermissionsHelper.check(source, "savscommoneconomy.command.pay", true))
@@ -93,28 +118,85 @@ public class EconomyCommands {
                         .executes(EconomyCommands::checkOtherBalance)));
     }
 
-    private static int balTop(CommandContext<ServerCommandSource> context) {
-        java.util.List<EconomyManager.AccountData> topAccounts = EconomyManager.getInstance().getTopAccounts(10);
-        
-        context.getSource().sendFeedback(() -> Text.literal("--- 余额排行榜 ---"), false);
-        for (int i = 0; i < topAccounts.size(); i++) {
-            EconomyManager.AccountData account = topAccounts.get(i);
-            int rank = i + 1;
-            context.getSource().sendFeedback(() -> Text.literal(rank + ". " + account.name + ": " + EconomyManager.getInstance().format(account.balance)), false);
+    // Served from the leaderboard snapshot, never touches storage
+    private static int balTop(CommandContext<ServerCommandSource> context, int requestedPage) {
+        EconomyManager manager = EconomyManager.getInstance();
+        EconomyManager.LeaderboardSnapshot snapshot = manager.getLeaderboard();
+        int pageSize = Math.max(1, manager.getConfig().baltop.pageSize);
+        int page = Math.min(requestedPage, snapshot.pageCount(pageSize));
+
+        context.getSource().sendFeedback(() -> Text.literal("--- 余额排行榜 (" + page + "/" + snapshot.pageCount(pageSize) + ") ---"), false);
+        for (savage.commoneconomy.util.RankIndex.Entry entry : snapshot.page(page, pageSize)) {
+            context.getSource().sendFeedback(() -> Text.literal(entry.rank + ". " + entry.name + ": " + manager.format(entry.balance())), false);
+        }
+        context.getSource().sendFeedback(() -> Text.literal("共" + snapshot.accountCount + "个账户, 总额 " + manager.format(snapshot.total)
+                + " (" + snapshot.ageSeconds() + "秒前更新)"), false);
+        return 1;
+    }
+
+    // Ranks come from the in-memory rank index, no storage access needed
+    private static int checkSelfRank(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        ServerPlayerEntity player = context.getSource().getPlayerOrThrow();
+        EconomyManager manager = EconomyManager.getInstance();
+        int rank = manager.getRank(player.getUuid());
+        if (rank == 0) {
+            context.getSource().sendError(Text.literal("您还没有账户"));
+            return 0;
         }
+        context.getSource().sendFeedback(() -> Text.literal("您的排名: 第" + rank + "名 (共" + manager.getRankedAccountCount() + "个账户)"), false);
+        return rank;
+    }
+
+    private static int checkOtherRank(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        String targetName = StringArgumentType.getString(context, "target");
+        String displayName = getTargetName(context, targetName);
+        EconomyManager manager = EconomyManager.getInstance();
+
+        withTargetUUID(context, targetName, targetUUID -> {
+            int rank = manager.getRank(targetUUID);
+            if (rank == 0) {
+                context.getSource().sendError(Text.literal(displayName + "没有账户"));
+                return;
+            }
+            context.getSource().sendFeedback(() -> Text.literal(displayName + "的排名: 第" + rank + "名 (共" + manager.getRankedAccountCount() + "个账户)"), false);
+        });
         return 1;
     }
 
-    private static java.util.UUID getTargetUUID(CommandContext<ServerCommandSource> context, String targetName) throws CommandSyntaxException {
+    private static CompletableFuture<UUID> getTargetUUID(CommandContext<ServerCommandSource> context, String targetName) throws CommandSyntaxException {
         if (targetName.equals("@s")) {
-            return context.getSource().getPlayerOrThrow().getUuid();
+            return CompletableFuture.completedFuture(context.getSource().getPlayerOrThrow().getUuid());
         }
         
         ServerPlayerEntity target = context.getSource().getServer().getPlayerManager().getPlayer(targetName);
         if (target != null) {
-            return target.getUuid();
+            return CompletableFuture.completedFuture(target.getUuid());
         }
-        return EconomyManager.getInstance().getUUID(targetName);
+        // Offline lookups may hit the database
+        return EconomyManager.getInstance().getUUIDAsync(targetName);
+    }
+
+    /**
+     * Resolves the target player and runs {@code action} with their UUID on the server thread,
+     * or reports that the player doesn't exist.
+     */
+    private static void withTargetUUID(CommandContext<ServerCommandSource> context, String targetName, Consumer<UUID> action) throws CommandSyntaxException {
+        getTargetUUID(context, targetName)
+                .thenAcceptAsync(targetUUID -> {
+                    if (targetUUID == null) {
+                        context.getSource().sendError(Text.literal("玩家离线或不存在该玩家"));
+                        return;
+                    }
+                    action.accept(targetUUID);
+                }, EconomyManager.getInstance().getMainThreadExecutor())
+                .exceptionally(t -> handleFailure(context, t));
+    }
+
+    private static Void handleFailure(CommandContext<ServerCommandSource> context, Throwable t) {
+        savage.commoneconomy.SavsCommonEconomy.LOGGER.error("Economy command failed", t);
+        EconomyManager.getInstance().getMainThreadExecutor().execute(() ->
+                context.getSource().sendError(Text.literal("经济系统请求失败,请稍后重试"))); // Shared by every command, not just payments
+        return null;
     }
 
     private static String getTargetName(CommandContext<ServerCommandSource> context, String targetName) throws CommandSyntaxException {
@@ -131,23 +213,23 @@ public class EconomyCommands {
 
     private static int checkSelfBalance(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
         ServerPlayerEntity player = context.getSource().getPlayerOrThrow();
-        BigDecimal balance = EconomyManager.getInstance().getBalance(player.getUuid());
-        context.getSource().sendFeedback(() -> Text.literal("您的余额: " + EconomyManager.getInstance().format(balance)), false);
+        EconomyManager manager = EconomyManager.getInstance();
+        manager.getBalanceAsync(player.getUuid())
+                .thenAcceptAsync(balance -> context.getSource().sendFeedback(() -> Text.literal("您的余额: " + manager.format(balance)), false),
+                        manager.getMainThreadExecutor())
+                .exceptionally(t -> handleFailure(context, t));
         return 1;
     }
 
     private static int checkOtherBalance(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
         String targetName = StringArgumentType.getString(context, "target");
-        UUID targetUUID = getTargetUUID(context, targetName);
         String displayName = getTargetName(context, targetName);
+        EconomyManager manager = EconomyManager.getInstance();
 
-        if (targetUUID == null) {
-            context.getSource().sendError(Text.literal("玩家离线或不存在该玩家"));
-            return 0;
-        }
-
-        BigDecimal balance = EconomyManager.getInstance().getBalance(targetUUID);
-        context.getSource().sendFeedback(() -> Text.literal(displayName + "的账户余额: " + EconomyManager.getInstance().format(balance)), false);
+        withTargetUUID(context, targetName, targetUUID -> manager.getBalanceAsync(targetUUID)
+                .thenAcceptAsync(balance -> context.getSource().sendFeedback(() -> Text.literal(displayName + "的账户余额: " + manager.format(balance)), false),
+                        manager.getMainThreadExecutor())
+                .exceptionally(t -> handleFailure(context, t)));
         return 1;
     }
 
@@ -168,48 +250,66 @@ public class EconomyCommands {
         }
     }
 
+    // The amount argument rounded to the currency scale, i.e. what is actually moved and logged
+    private static BigDecimal getAmount(CommandContext<ServerCommandSource> context) {
+        return Money.fromUnits(Money.toUnits(BigDecimal.valueOf(DoubleArgumentType.getDouble(context, "amount"))));
+    }
+
     private static int pay(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
         ServerPlayerEntity sourcePlayer = context.getSource().getPlayerOrThrow();
         String targetName = StringArgumentType.getString(context, "target");
-        double amountDouble = DoubleArgumentType.getDouble(context, "amount");
-        BigDecimal amount = BigDecimal.valueOf(amountDouble);
-
-        UUID targetUUID = getTargetUUID(context, targetName);
-        String displayName = getTargetName(context, targetName);
-
-        if (targetUUID == null) {
-            context.getSource().sendError(Text.literal("玩家离线或不存在该玩家"));
+        BigDecimal amount = getAmount(context);
+        if (amount.signum() <= 0) {
+            context.getSource().sendError(Text.literal("金额太小"));
             return 0;
         }
+        String displayName = getTargetName(context, targetName);
+        EconomyManager manager = EconomyManager.getInstance();
 
-        if (sourcePlayer.getUuid().equals(targetUUID)) {
-            context.getSource().sendError(Text.literal("您不能给自己付钱"));
-            return 0;
+        withTargetUUID(context, targetName, targetUUID -> {
+            if (sourcePlayer.getUuid().equals(targetUUID)) {
+                context.getSource().sendError(Text.literal("您不能给自己付钱"));
+                return;
+            }
+
+            manager.transferAsync(sourcePlayer.getUuid(), targetUUID, amount, false)
+                    .thenAcceptAsync(result -> completePay(context, sourcePlayer, targetUUID, displayName, amount, result), manager.getMainThreadExecutor())
+                    .exceptionally(t -> handleFailure(context, t));
+        });
+        return 1;
+    }
+
+    private static void completePay(CommandContext<ServerCommandSource> context, ServerPlayerEntity sourcePlayer, UUID targetUUID,
+                                    String displayName, BigDecimal amount, EconomyManager.TransferResult result) {
+        if (result == null) {
+            context.getSource().sendError(Text.literal("Insufficient funds."));
+            return;
         }
 
-        if (EconomyManager.getInstance().removeBalance(sourcePlayer.getUuid(), amount, false)) {
-            EconomyManager.getInstance().addBalance(targetUUID, amount, false);
-            String formattedAmount = EconomyManager.getInstance().format(amount);
-            sendCommandFeedback(context, "已支付" + formattedAmount + "给" + displayName, false);
+        String formattedAmount = EconomyManager.getInstance().format(amount);
+        sendCommandFeedback(context, "已支付" + formattedAmount + "给" + displayName, false);
+        // Balances held in the write-behind ledger aren't stored yet, the ledger publishes them once flushed
+        boolean senderTracked = EconomyManager.getInstance().isTracked(sourcePlayer.getUuid());
+        boolean targetTracked = EconomyManager.getInstance().isTracked(targetUUID);
+        
+        ServerPlayerEntity target = context.getSource().getServer().getPlayerManager().getPlayer(targetUUID);
+        if (target != null) {
+            // Check notification mode for receiver too? Usually receiver gets generic API notification if enabled.
+            // But this is a specific "You received X from Y" message.
+            // Let's respect commandNotificationMode for this specific feedback as well.
+            var config = EconomyManager.getInstance().getConfig();
+            if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.ACTION_BAR) {
+                target.sendMessage(Text.literal("收到" + formattedAmount + "来自" + sourcePlayer.getName().getString()), true);
+            } else if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.CHAT) {
+                target.sendMessage(Text.literal("收到" + formattedAmount + "来自" + sourcePlayer.getName().getString()), false);
+            }
             
-            ServerPlayerEntity target = context.getSource().getServer().getPlayerManager().getPlayer(targetUUID);
-            if (target != null) {
-                // Check notification mode for receiver too? Usually receiver gets generic API notification if enabled.
-                // But this is a specific "You received X from Y" message.
-                // Let's respect commandNotificationMode for this specific feedback as well.
-                var config = EconomyManager.getInstance().getConfig();
-                if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.ACTION_BAR) {
-                    target.sendMessage(Text.literal("收到" + formattedAmount + "来自" + sourcePlayer.getName().getString()), true);
-                } else if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.CHAT) {
-                    target.sendMessage(Text.literal("收到" + formattedAmount + "来自" + sourcePlayer.getName().getString()), false);
-                }
-                
-                // Player is local, but we still need to invalidate caches on other servers
+            // Player is local, but we still need to invalidate caches on other servers
+            if (!targetTracked) {
                 try {
-                    BigDecimal newBalance = EconomyManager.getInstance().getBalance(targetUUID);
                     savage.commoneconomy.util.RedisManager.getInstance().publishTransaction(
                         targetUUID,
-                        newBalance,
+                        result.to.balance(),
                         "支付",
                         sourcePlayer.getName().getString(),
                         null // No chat message needed, they got it locally
@@ -217,246 +317,301 @@ public class EconomyCommands {
                 } catch (Exception e) {
                     // Redis is optional
                 }
-            } else {
-                // Player not on this server, publish to Redis with chat message
-                try {
-                    BigDecimal newBalance = EconomyManager.getInstance().getBalance(targetUUID);
-                    savage.commoneconomy.util.RedisManager.getInstance().publishTransaction(
-                        targetUUID,
-                        newBalance,
-                        "支付",
-                        sourcePlayer.getName().getString(),
-                        "收到" + formattedAmount + "来自" + sourcePlayer.getName().getString()
-                    );
-                } catch (Exception e) {
-                    // Redis is optional
-                }
             }
-            savage.commoneconomy.util.TransactionLogger.log("PAY", sourcePlayer.getName().getString(), displayName, amount, "Payment");
-            return 1;
         } else {
-            context.getSource().sendError(Text.literal("Insufficient funds."));
-            return 0;
+            // Player not on this server, publish to Redis with chat message
+            try {
+                savage.commoneconomy.util.RedisManager.getInstance().publishTransaction(
+                    targetUUID,
+                    result.to.balance(),
+                    "支付",
+                    sourcePlayer.getName().getString(),
+                    "收到" + formattedAmount + "来自" + sourcePlayer.getName().getString()
+                );
+            } catch (Exception e) {
+                // Redis is optional
+            }
+        }
+
+        // The sender's balance changed too, keep other servers' caches in sync
+        if (!senderTracked) {
+            try {
+                savage.commoneconomy.util.RedisManager.getInstance().publishBalanceUpdate(sourcePlayer.getUuid(), result.from.balance());
+            } catch (Exception e) {
+                // Redis is optional
+            }
         }
+        savage.commoneconomy.util.TransactionLogger.log("PAY", sourcePlayer.getName().getString(), displayName, amount, "Payment");
     }
 
     private static int giveMoney(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
         String targetName = StringArgumentType.getString(context, "target");
-        double amountDouble = DoubleArgumentType.getDouble(context, "amount");
-        BigDecimal amount = BigDecimal.valueOf(amountDouble);
-        String formattedAmount = EconomyManager.getInstance().format(amount);
-
-        UUID targetUUID = getTargetUUID(context, targetName);
-        String displayName = getTargetName(context, targetName);
-
-        if (targetUUID == null) {
-            context.getSource().sendError(Text.literal("玩家离线或不存在该玩家"));
+        BigDecimal amount = getAmount(context);
+        if (amount.signum() <= 0) {
+            context.getSource().sendError(Text.literal("金额太小"));
             return 0;
         }
+        String displayName = getTargetName(context, targetName);
+        EconomyManager manager = EconomyManager.getInstance();
 
-        if (EconomyManager.getInstance().addBalance(targetUUID, amount, false)) {
-            sendCommandFeedback(context, "赠送" + formattedAmount + "给" + displayName, true);
-            
-            ServerPlayerEntity target = context.getSource().getServer().getPlayerManager().getPlayer(targetUUID);
-            if (target != null) {
-                var config = EconomyManager.getInstance().getConfig();
-                if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.ACTION_BAR) {
-                    target.sendMessage(Text.literal("收到" + formattedAmount + " (Admin Gift)"), true);
-                } else if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.CHAT) {
-                    target.sendMessage(Text.literal("收到" + formattedAmount + " (Admin Gift)"), false);
-                }
-                
-                // Player is local, but we still need to invalidate caches on other servers
-                try {
-                    BigDecimal newBalance = EconomyManager.getInstance().getBalance(targetUUID);
-                    savage.commoneconomy.util.RedisManager.getInstance().publishTransaction(
-                        targetUUID,
-                        newBalance,
-                        "赠送",
-                        context.getSource().getName(),
-                        null // No chat message needed
-                    );
-                } catch (Exception e) {
-                    // Redis is optional
-                }
-            } else {
-                // Player not on this server, publish to Redis
-                try {
-                    BigDecimal newBalance = EconomyManager.getInstance().getBalance(targetUUID);
-                    savage.commoneconomy.util.RedisManager.getInstance().publishTransaction(
-                        targetUUID,
-                        newBalance,
-                        "赠送",
-                        context.getSource().getName(),
-                        "收到" + formattedAmount + "(Admin Gift)"
-                    );
-                } catch (Exception e) {
-                    // Redis is optional
-                }
-            }
-            savage.commoneconomy.util.TransactionLogger.log("ADMIN_GIVE", context.getSource().getName(), displayName, amount, "Admin Gift");
-            return 1;
-        } else {
-            context.getSource().sendError(Text.literal("支付失败,请再次重试"));
-            return 0;
-        }
+        withTargetUUID(context, targetName, targetUUID -> manager
+                .supplyAsync(() -> manager.addBalance(targetUUID, amount, false) ? manager.getBalance(targetUUID) : null)
+                .thenAcceptAsync(newBalance -> completeGiveMoney(context, targetUUID, displayName, amount, newBalance), manager.getMainThreadExecutor())
+                .exceptionally(t -> handleFailure(context, t)));
+        return 1;
     }
 
-    private static int takeMoney(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
-        String targetName = StringArgumentType.getString(context, "target");
-        double amountDouble = DoubleArgumentType.getDouble(context, "amount");
-        BigDecimal amount = BigDecimal.valueOf(amountDouble);
-        String formattedAmount = EconomyManager.getInstance().format(amount);
-
-        UUID targetUUID = getTargetUUID(context, targetName);
-        String displayName = getTargetName(context, targetName);
-
-        if (targetUUID == null) {
-            context.getSource().sendError(Text.literal("玩家离线或不存在该玩家"));
-            return 0;
+    private static void completeGiveMoney(CommandContext<ServerCommandSource> context, UUID targetUUID, String displayName,
+                                          BigDecimal amount, BigDecimal newBalance) {
+        if (newBalance == null) {
+            context.getSource().sendError(Text.literal("支付失败,请再次重试"));
+            return;
         }
 
-        if (!EconomyManager.getInstance().removeBalance(targetUUID, amount, false)) {
-            context.getSource().sendError(Text.literal("无法取出余额(余额不足或交易失败)"));
-            return 0;
-        } else {
-            sendCommandFeedback(context, "Took " + formattedAmount + " from " + displayName, true);
+        String formattedAmount = EconomyManager.getInstance().format(amount);
+        sendCommandFeedback(context, "赠送" + formattedAmount + "给" + displayName, true);
+        
+        ServerPlayerEntity target = context.getSource().getServer().getPlayerManager().getPlayer(targetUUID);
+        if (target != null) {
+            var config = EconomyManager.getInstance().getConfig();
+            if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.ACTION_BAR) {
+                target.sendMessage(Text.literal("收到" + formattedAmount + " (Admin Gift)"), true);
+            } else if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.CHAT) {
+                target.sendMessage(Text.literal("收到" + formattedAmount + " (Admin Gift)"), false);
+            }
             
-            // Publish Redis update to invalidate caches (silent)
+            // Player is local, but we still need to invalidate caches on other servers
             try {
-                BigDecimal newBalance = EconomyManager.getInstance().getBalance(targetUUID);
                 savage.commoneconomy.util.RedisManager.getInstance().publishTransaction(
                     targetUUID,
                     newBalance,
-                    "take",
+                    "赠送",
                     context.getSource().getName(),
-                    null 
+                    null // No chat message needed
+                );
+            } catch (Exception e) {
+                // Redis is optional
+            }
+        } else {
+            // Player not on this server, publish to Redis
+            try {
+                savage.commoneconomy.util.RedisManager.getInstance().publishTransaction(
+                    targetUUID,
+                    newBalance,
+                    "赠送",
+                    context.getSource().getName(),
+                    "收到" + formattedAmount + "(Admin Gift)"
                 );
             } catch (Exception e) {
                 // Redis is optional
             }
-            
-            savage.commoneconomy.util.TransactionLogger.log("ADMIN_TAKE", context.getSource().getName(), displayName, amount, "Admin Take");
-            return 1;
         }
+        savage.commoneconomy.util.TransactionLogger.log("ADMIN_GIVE", context.getSource().getName(), displayName, amount, "Admin Gift");
     }
 
-    private static int setMoney(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
-        String targetName = StringArgumentType.getString(context, "target");
-        double amountDouble = DoubleArgumentType.getDouble(context, "amount");
-        BigDecimal amount = BigDecimal.valueOf(amountDouble);
-        String formattedAmount = EconomyManager.getInstance().format(amount);
+    private static int giveMoneyToPlayers(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        Collection<ServerPlayerEntity> targets = EntityArgumentType.getPlayers(context, "targets");
+        BigDecimal amount = getAmount(context);
+        if (amount.signum() <= 0) {
+            context.getSource().sendError(Text.literal("金额太小"));
+            return 0;
+        }
+        EconomyManager manager = EconomyManager.getInstance();
 
-        UUID targetUUID = getTargetUUID(context, targetName);
-        String displayName = getTargetName(context, targetName);
+        List<EconomyManager.BalanceDelta> deltas = new ArrayList<>();
+        for (ServerPlayerEntity target : targets) {
+            deltas.add(new EconomyManager.BalanceDelta(target.getUuid(), amount));
+        }
 
-        if (targetUUID == null) {
-            context.getSource().sendError(Text.literal("玩家离线或不存在该玩家"));
-            return 0;
+        // Credits can't be refused for lack of funds, so a partial batch only skips missing accounts
+        manager.applyBatchAsync(deltas, false)
+                .thenAcceptAsync(result -> completeGiveMoneyToPlayers(context, targets, amount, result), manager.getMainThreadExecutor())
+                .exceptionally(t -> handleFailure(context, t));
+        return targets.size();
+    }
+
+    private static void completeGiveMoneyToPlayers(CommandContext<ServerCommandSource> context, Collection<ServerPlayerEntity> targets,
+                                                   BigDecimal amount, Map<UUID, EconomyManager.AccountData> result) {
+        if (result == null || result.isEmpty()) {
+            context.getSource().sendError(Text.literal("支付失败,请再次重试"));
+            return;
         }
 
-        EconomyManager.getInstance().setBalance(targetUUID, amount, false);
-        sendCommandFeedback(context, "Set " + displayName + "'s balance to " + formattedAmount, true);
-        
-        ServerPlayerEntity target = context.getSource().getServer().getPlayerManager().getPlayer(targetUUID);
-        if (target != null) {
-            var config = EconomyManager.getInstance().getConfig();
+        String formattedAmount = EconomyManager.getInstance().format(amount);
+        sendCommandFeedback(context, "赠送" + formattedAmount + "给" + result.size() + "名玩家", true);
+
+        var config = EconomyManager.getInstance().getConfig();
+        for (ServerPlayerEntity target : targets) {
+            if (!result.containsKey(target.getUuid())) continue;
             if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.ACTION_BAR) {
-                target.sendMessage(Text.literal("Your balance has been set to " + formattedAmount), true);
+                target.sendMessage(Text.literal("收到" + formattedAmount + " (Admin Gift)"), true);
             } else if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.CHAT) {
-                target.sendMessage(Text.literal("Your balance has been set to " + formattedAmount), false);
+                target.sendMessage(Text.literal("收到" + formattedAmount + " (Admin Gift)"), false);
             }
+            savage.commoneconomy.util.TransactionLogger.log("ADMIN_GIVE", context.getSource().getName(), target.getName().getString(), amount, "Admin Gift");
         }
-        
-        // Publish Redis update
-        try {
-            BigDecimal newBalance = EconomyManager.getInstance().getBalance(targetUUID);
-            savage.commoneconomy.util.RedisManager.getInstance().publishTransaction(
-                targetUUID,
-                newBalance,
-                "set",
-                context.getSource().getName(),
-                target == null ? "Your balance has been set to " + formattedAmount : null // Send message if remote, otherwise silent
-            );
-        } catch (Exception e) {
-            // Redis is optional
-        }
-        
-        savage.commoneconomy.util.TransactionLogger.log("ADMIN_SET", context.getSource().getName(), displayName, amount, "Set Balance");
-        return 1;
     }
 
-    private static int resetMoney(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+    private static int takeMoney(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
         String targetName = StringArgumentType.getString(context, "target");
-
-        UUID targetUUID = getTargetUUID(context, targetName);
-        String displayName = getTargetName(context, targetName);
-
-        if (targetUUID == null) {
-            context.getSource().sendError(Text.literal("玩家离线或不存在该玩家"));
+        BigDecimal amount = getAmount(context);
+        if (amount.signum() <= 0) {
+            context.getSource().sendError(Text.literal("金额太小"));
             return 0;
         }
+        String formattedAmount = EconomyManager.getInstance().format(amount);
+        String displayName = getTargetName(context, targetName);
+        EconomyManager manager = EconomyManager.getInstance();
+
+        withTargetUUID(context, targetName, targetUUID -> manager
+                .supplyAsync(() -> manager.removeBalance(targetUUID, amount, false) ? manager.getBalance(targetUUID) : null)
+                .thenAcceptAsync(newBalance -> {
+                    if (newBalance == null) {
+                        context.getSource().sendError(Text.literal("无法取出余额(余额不足或交易失败)"));
+                        return;
+                    }
+                    sendCommandFeedback(context, "Took " + formattedAmount + " from " + displayName, true);
+                    
+                    // Publish Redis update to invalidate caches (silent)
+                    try {
+                        savage.commoneconomy.util.RedisManager.getInstance().publishTransaction(
+                            targetUUID,
+                            newBalance,
+                            "take",
+                            context.getSource().getName(),
+                            null 
+                        );
+                    } catch (Exception e) {
+                        // Redis is optional
+                    }
+                    
+                    savage.commoneconomy.util.TransactionLogger.log("ADMIN_TAKE", context.getSource().getName(), displayName, amount, "Admin Take");
+                }, manager.getMainThreadExecutor())
+                .exceptionally(t -> handleFailure(context, t)));
+        return 1;
+    }
 
-        EconomyManager.getInstance().resetBalance(targetUUID);
-        BigDecimal newBalance = EconomyManager.getInstance().getBalance(targetUUID);
-        String formattedAmount = EconomyManager.getInstance().format(newBalance);
+    private static int setMoney(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        String targetName = StringArgumentType.getString(context, "target");
+        BigDecimal amount = getAmount(context);
+        String formattedAmount = EconomyManager.getInstance().format(amount);
+        String displayName = getTargetName(context, targetName);
+        EconomyManager manager = EconomyManager.getInstance();
+
+        withTargetUUID(context, targetName, targetUUID -> manager
+                .supplyAsync(() -> {
+                    manager.setBalance(targetUUID, amount, false);
+                    return manager.getBalance(targetUUID);
+                })
+                .thenAcceptAsync(newBalance -> {
+                    sendCommandFeedback(context, "Set " + displayName + "'s balance to " + formattedAmount, true);
+                    
+                    ServerPlayerEntity target = context.getSource().getServer().getPlayerManager().getPlayer(targetUUID);
+                    if (target != null) {
+                        var config = manager.getConfig();
+                        if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.ACTION_BAR) {
+                            target.sendMessage(Text.literal("Your balance has been set to " + formattedAmount), true);
+                        } else if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.CHAT) {
+                            target.sendMessage(Text.literal("Your balance has been set to " + formattedAmount), false);
+                        }
+                    }
+                    
+                    // Publish Redis update
+                    try {
+                        savage.commoneconomy.util.RedisManager.getInstance().publishTransaction(
+                            targetUUID,
+                            newBalance,
+                            "set",
+                            context.getSource().getName(),
+                            target == null ? "Your balance has been set to " + formattedAmount : null // Send message if remote, otherwise silent
+                        );
+                    } catch (Exception e) {
+                        // Redis is optional
+                    }
+                    
+                    savage.commoneconomy.util.TransactionLogger.log("ADMIN_SET", context.getSource().getName(), displayName, amount, "Set Balance");
+                }, manager.getMainThreadExecutor())
+                .exceptionally(t -> handleFailure(context, t)));
+        return 1;
+    }
 
-        sendCommandFeedback(context, "Reset " + displayName + "'s balance to " + formattedAmount, true);
-        
-        ServerPlayerEntity target = context.getSource().getServer().getPlayerManager().getPlayer(targetUUID);
-        if (target != null) {
-            var config = EconomyManager.getInstance().getConfig();
-            if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.ACTION_BAR) {
-                target.sendMessage(Text.literal("Your balance has been reset to " + formattedAmount), true);
-            } else if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.CHAT) {
-                target.sendMessage(Text.literal("Your balance has been reset to " + formattedAmount), false);
-            }
-        }
-        
-        // Publish Redis update
-        try {
-            savage.commoneconomy.util.RedisManager.getInstance().publishTransaction(
-                targetUUID,
-                newBalance,
-                "reset",
-                context.getSource().getName(),
-                target == null ? "Your balance has been reset to " + formattedAmount : null // Send message if remote
-            );
-        } catch (Exception e) {
-            // Redis is optional
-        }
+    private static int resetMoney(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
+        String targetName = StringArgumentType.getString(context, "target");
+        String displayName = getTargetName(context, targetName);
+        EconomyManager manager = EconomyManager.getInstance();
+
+        withTargetUUID(context, targetName, targetUUID -> manager
+                .supplyAsync(() -> {
+                    manager.resetBalance(targetUUID);
+                    return manager.getBalance(targetUUID);
+                })
+                .thenAcceptAsync(newBalance -> {
+                    String formattedAmount = manager.format(newBalance);
+                    sendCommandFeedback(context, "Reset " + displayName + "'s balance to " + formattedAmount, true);
+                    
+                    ServerPlayerEntity target = context.getSource().getServer().getPlayerManager().getPlayer(targetUUID);
+                    if (target != null) {
+                        var config = manager.getConfig();
+                        if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.ACTION_BAR) {
+                            target.sendMessage(Text.literal("Your balance has been reset to " + formattedAmount), true);
+                        } else if (config.commandNotificationMode == savage.commoneconomy.config.EconomyConfig.NotificationMode.CHAT) {
+                            target.sendMessage(Text.literal("Your balance has been reset to " + formattedAmount), false);
+                        }
+                    }
+                    
+                    // Publish Redis update
+                    try {
+                        savage.commoneconomy.util.RedisManager.getInstance().publishTransaction(
+                            targetUUID,
+                            newBalance,
+                            "reset",
+                            context.getSource().getName(),
+                            target == null ? "Your balance has been reset to " + formattedAmount : null // Send message if remote
+                        );
+                    } catch (Exception e) {
+                        // Redis is optional
+                    }
+                }, manager.getMainThreadExecutor())
+                .exceptionally(t -> handleFailure(context, t)));
         return 1;
     }
 
     private static int withdraw(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
         ServerPlayerEntity player = context.getSource().getPlayerOrThrow();
-        double amountDouble = DoubleArgumentType.getDouble(context, "amount");
-        BigDecimal amount = BigDecimal.valueOf(amountDouble);
-
-        if (EconomyManager.getInstance().removeBalance(player.getUuid(), amount)) {
-            // Create a paper item with NBT data
-            net.minecraft.item.ItemStack note = new net.minecraft.item.ItemStack(net.minecraft.item.Items.PAPER);
-            
-            // Create NBT data for the bank note
-            net.minecraft.nbt.NbtCompound nbt = new net.minecraft.nbt.NbtCompound();
-            nbt.putBoolean("EconomyBankNote", true);
-            nbt.putDouble("Value", amountDouble);
-            note.set(net.minecraft.component.DataComponentTypes.CUSTOM_DATA, 
-                    net.minecraft.component.type.NbtComponent.of(nbt));
-            
-            // Set custom name
-            note.set(net.minecraft.component.DataComponentTypes.CUSTOM_NAME,
-                    Text.literal("Bank Note: " + EconomyManager.getInstance().format(amount))
-                            .formatted(net.minecraft.util.Formatting.GREEN));
-
-            player.getInventory().offerOrDrop(note);
-            sendCommandFeedback(context, "Withdrew " + EconomyManager.getInstance().format(amount) + " as a bank note.", false);
-            savage.commoneconomy.util.TransactionLogger.log("WITHDRAW", player.getName().getString(), "Bank Note", amount, "Withdrawal");
-            return 1;
-        } else {
-            context.getSource().sendError(Text.literal("余额不足"));
+        BigDecimal amount = getAmount(context);
+        if (amount.signum() <= 0) {
+            context.getSource().sendError(Text.literal("金额太小"));
             return 0;
         }
+        EconomyManager manager = EconomyManager.getInstance();
+
+        manager.removeBalanceAsync(player.getUuid(), amount)
+                .thenAcceptAsync(success -> {
+                    if (!success) {
+                        context.getSource().sendError(Text.literal("余额不足"));
+                        return;
+                    }
+
+                    // Create a paper item with NBT data
+                    net.minecraft.item.ItemStack note = new net.minecraft.item.ItemStack(net.minecraft.item.Items.PAPER);
+                    
+                    // Create NBT data for the bank note
+                    net.minecraft.nbt.NbtCompound nbt = new net.minecraft.nbt.NbtCompound();
+                    nbt.putBoolean("EconomyBankNote", true);
+                    nbt.putDouble("Value", amount.doubleValue());
+                    note.set(net.minecraft.component.DataComponentTypes.CUSTOM_DATA, 
+                            net.minecraft.component.type.NbtComponent.of(nbt));
+                    
+                    // Set custom name
+                    note.set(net.minecraft.component.DataComponentTypes.CUSTOM_NAME,
+                            Text.literal("Bank Note: " + manager.format(amount))
+                                    .formatted(net.minecraft.util.Formatting.GREEN));
+
+                    player.getInventory().offerOrDrop(note);
+                    sendCommandFeedback(context, "Withdrew " + manager.format(amount) + " as a bank note.", false);
+                    savage.commoneconomy.util.TransactionLogger.log("WITHDRAW", player.getName().getString(), "Bank Note", amount, "Withdrawal");
+                }, manager.getMainThreadExecutor())
+                .exceptionally(t -> handleFailure(context, t));
+        return 1;
     }
 }
-
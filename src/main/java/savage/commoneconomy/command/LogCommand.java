@@ -10,7 +10,6 @@ import net.minecraft.text.Text;
 import savage.commoneconomy.util.TransactionLogger;
 
 import java.time.LocalDateTime;
-import java.util.List;
 
 public class LogCommand {
 
@@ -28,12 +27,16 @@ public class LogCommand {
                         .then(CommandManager.argument("time", IntegerArgumentType.integer(1))
                                 .then(CommandManager.argument("unit", StringArgumentType.string())
                                         .suggests((context, builder) -> net.minecraft.command.CommandSource.suggestMatching(new String[]{"s", "m", "h", "d"}, builder))
-                                        .executes(context -> executeLogSearch(context, 1))
+                                        .executes(context -> executeLogSearch(context, 1, null))
                                         .then(CommandManager.argument("page", IntegerArgumentType.integer(1))
-                                                .executes(context -> executeLogSearch(context, IntegerArgumentType.getInteger(context, "page"))))))));
+                                                .executes(context -> executeLogSearch(context, IntegerArgumentType.getInteger(context, "page"), null))
+                                                // Added by the [Next >] button so the next page is read straight from the index
+                                                .then(CommandManager.argument("cursor", StringArgumentType.word())
+                                                        .executes(context -> executeLogSearch(context, IntegerArgumentType.getInteger(context, "page"),
+                                                                TransactionLogger.LogCursor.parse(StringArgumentType.getString(context, "cursor"))))))))));
     }
 
-    private static int executeLogSearch(CommandContext<ServerCommandSource> context, int page) {
+    private static int executeLogSearch(CommandContext<ServerCommandSource> context, int page, TransactionLogger.LogCursor after) {
         String target = StringArgumentType.getString(context, "target");
         int time = IntegerArgumentType.getInteger(context, "time");
         String unit = StringArgumentType.getString(context, "unit");
@@ -63,23 +66,20 @@ public class LogCommand {
 
         // Run search asynchronously to avoid lag
         new Thread(() -> {
-            List<TransactionLogger.LogEntry> results = TransactionLogger.searchLogs(target, cutoff);
+            // Only the requested page is fetched, plus a count for the header
+            TransactionLogger.LogPage result = TransactionLogger.searchLogPage(target, cutoff, after, page, RESULTS_PER_PAGE);
             
-            if (results.isEmpty()) {
+            if (result.total == 0) {
                 context.getSource().sendFeedback(() -> Text.literal("No transactions found."), false);
                 return;
             }
 
-            int totalPages = (int) Math.ceil((double) results.size() / RESULTS_PER_PAGE);
-            int currentPage = Math.min(page, totalPages);
+            int totalPages = result.totalPages;
+            int currentPage = result.page;
             
-            context.getSource().sendFeedback(() -> Text.literal("--- Found " + results.size() + " transactions (Page " + currentPage + "/" + totalPages + ") ---"), false);
+            context.getSource().sendFeedback(() -> Text.literal("--- Found " + result.total + " transactions (Page " + currentPage + "/" + totalPages + ") ---"), false);
             
-            int startIndex = (currentPage - 1) * RESULTS_PER_PAGE;
-            int endIndex = Math.min(startIndex + RESULTS_PER_PAGE, results.size());
-            
-            for (int i = startIndex; i < endIndex; i++) {
-                TransactionLogger.LogEntry entry = results.get(i);
+            for (TransactionLogger.LogEntry entry : result.entries) {
                 
                 // Format: [Time] [TYPE] Source -> Target: $Amount (Details)
                 // Colors: Time=Gray, Type=Color, Source/Target=White, Amount=Yellow, Details=Gray Italic
@@ -119,10 +119,11 @@ public class LogCommand {
             }
             
             if (currentPage < totalPages) {
+                TransactionLogger.LogCursor next = result.nextCursor();
+                String nextCommand = "/ecolog " + target + " " + time + " " + unit + " " + (currentPage + 1) + (next != null ? " " + next : "");
                 navText.append(Text.literal("[Next >]")
                         .formatted(net.minecraft.util.Formatting.AQUA, net.minecraft.util.Formatting.BOLD)
-                        .styled(style -> style.withClickEvent(new net.minecraft.text.ClickEvent.RunCommand(
-                                "/ecolog " + target + " " + time + " " + unit + " " + (currentPage + 1)))));
+                        .styled(style -> style.withClickEvent(new net.minecraft.text.ClickEvent.RunCommand(nextCommand))));
             }
             
             if (totalPages > 1) {
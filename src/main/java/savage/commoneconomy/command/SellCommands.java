@@ -29,6 +29,9 @@ public class SellCommands {
                         .executes(SellCommands::checkAllWorth))
                 .then(CommandManager.literal("list")
                         .executes(SellCommands::listWorth))
+                .then(CommandManager.literal("reload")
+                        .requires(source -> savage.commoneconomy.util.PermissionsHelper.check(source, "savscommoneconomy.admin", 2))
+                        .executes(SellCommands::reloadWorth))
                 .then(CommandManager.argument("item", StringArgumentType.string())
                         .executes(SellCommands::checkItemWorth)));
 
@@ -49,7 +52,7 @@ public class SellCommands {
         }
 
         String itemId = Registries.ITEM.getId(stack.getItem()).toString();
-        BigDecimal price = EconomyManager.getInstance().getItemPrice(itemId);
+        BigDecimal price = EconomyManager.getInstance().getItemPrice(stack);
 
         if (price.compareTo(BigDecimal.ZERO) <= 0) {
             context.getSource().sendError(Text.literal("此物品不能被售卖"));
@@ -71,24 +74,29 @@ public class SellCommands {
         }
 
         String itemId = Registries.ITEM.getId(handStack.getItem()).toString();
-        BigDecimal price = EconomyManager.getInstance().getItemPrice(itemId);
+        BigDecimal price = EconomyManager.getInstance().getItemPrice(handStack);
 
         if (price.compareTo(BigDecimal.ZERO) <= 0) {
             context.getSource().sendError(Text.literal("此物品不能被售卖"));
             return 0;
         }
 
+        // Price each stack on its own, component prices can differ between stacks of the same item
         int totalCount = 0;
+        BigDecimal totalValue = BigDecimal.ZERO;
         for (int i = 0; i < player.getInventory().size(); i++) {
             ItemStack stack = player.getInventory().getStack(i);
             if (!stack.isEmpty() && stack.getItem() == handStack.getItem()) {
+                BigDecimal stackPrice = EconomyManager.getInstance().getItemPrice(stack);
+                if (stackPrice.compareTo(BigDecimal.ZERO) <= 0) continue;
                 totalCount += stack.getCount();
+                totalValue = totalValue.add(stackPrice.multiply(BigDecimal.valueOf(stack.getCount())));
             }
         }
 
-        BigDecimal totalValue = price.multiply(BigDecimal.valueOf(totalCount));
+        BigDecimal finalTotalValue = totalValue;
         int finalTotalCount = totalCount;
-        context.getSource().sendFeedback(() -> Text.literal("Worth of all " + finalTotalCount + "x " + itemId + " in inventory: " + EconomyManager.getInstance().format(totalValue)), false);
+        context.getSource().sendFeedback(() -> Text.literal("Worth of all " + finalTotalCount + "x " + itemId + " in inventory: " + EconomyManager.getInstance().format(finalTotalValue)), false);
         return 1;
     }
 
@@ -106,6 +114,16 @@ public class SellCommands {
         return 1;
     }
 
+    private static int reloadWorth(CommandContext<ServerCommandSource> context) {
+        if (!EconomyManager.getInstance().reloadWorthConfig()) {
+            context.getSource().sendError(Text.literal("worth.json 读取失败,仍在使用之前的价格(详见服务器日志)"));
+            return 0;
+        }
+        int count = EconomyManager.getInstance().getAllItemPrices().size();
+        context.getSource().sendFeedback(() -> Text.literal("已重新加载 worth.json (" + count + " 个物品价格)"), true);
+        return 1;
+    }
+
     private static int checkItemWorth(CommandContext<ServerCommandSource> context) {
         String itemId = StringArgumentType.getString(context, "item");
         BigDecimal price = EconomyManager.getInstance().getItemPrice(itemId);
@@ -129,7 +147,7 @@ public class SellCommands {
         }
 
         String itemId = Registries.ITEM.getId(stack.getItem()).toString();
-        BigDecimal price = EconomyManager.getInstance().getItemPrice(itemId);
+        BigDecimal price = EconomyManager.getInstance().getItemPrice(stack);
 
         if (price.compareTo(BigDecimal.ZERO) <= 0) {
             context.getSource().sendError(Text.literal("此物品不能被售卖"));
@@ -139,18 +157,27 @@ public class SellCommands {
         int count = stack.getCount();
         BigDecimal totalValue = price.multiply(BigDecimal.valueOf(count));
 
-        if (EconomyManager.getInstance().addBalance(player.getUuid(), totalValue)) {
-            player.setStackInHand(net.minecraft.util.Hand.MAIN_HAND, ItemStack.EMPTY);
-            context.getSource().sendFeedback(() -> Text.literal("Sold " + count + "x " + itemId + " for " + EconomyManager.getInstance().format(totalValue)), false);
-            
-
-            
-            savage.commoneconomy.util.TransactionLogger.log("COMMAND_SELL", player.getName().getString(), "Server", totalValue, "Sold " + count + "x " + itemId);
-            return 1;
-        } else {
-            context.getSource().sendError(Text.literal("支付失败,请重试"));
-            return 0;
-        }
+        // Take the items before paying so they can't be moved or sold twice while the payment is in flight
+        ItemStack sold = stack.copy();
+        player.setStackInHand(net.minecraft.util.Hand.MAIN_HAND, ItemStack.EMPTY);
+
+        EconomyManager manager = EconomyManager.getInstance();
+        manager.addBalanceAsync(player.getUuid(), totalValue)
+                .handleAsync((success, error) -> {
+                    if (error != null) {
+                        savage.commoneconomy.SavsCommonEconomy.LOGGER.error("Failed to pay for sold items", error);
+                    }
+                    if (error != null || !success) {
+                        player.getInventory().offerOrDrop(sold);
+                        context.getSource().sendError(Text.literal("支付失败,请重试"));
+                        return null;
+                    }
+
+                    context.getSource().sendFeedback(() -> Text.literal("Sold " + count + "x " + itemId + " for " + manager.format(totalValue)), false);
+                    savage.commoneconomy.util.TransactionLogger.log("COMMAND_SELL", player.getName().getString(), "Server", totalValue, "Sold " + count + "x " + itemId);
+                    return null;
+                }, manager.getMainThreadExecutor());
+        return 1;
     }
 
     private static int sellAll(CommandContext<ServerCommandSource> context) throws CommandSyntaxException {
@@ -163,43 +190,51 @@ public class SellCommands {
         }
 
         String itemId = Registries.ITEM.getId(handStack.getItem()).toString();
-        BigDecimal price = EconomyManager.getInstance().getItemPrice(itemId);
+        BigDecimal price = EconomyManager.getInstance().getItemPrice(handStack);
 
         if (price.compareTo(BigDecimal.ZERO) <= 0) {
             context.getSource().sendError(Text.literal("此物品不能被售卖"));
             return 0;
         }
 
+        // Take the matching stacks before paying so they can't be moved or sold twice while the payment is in flight
+        java.util.List<ItemStack> sold = new java.util.ArrayList<>();
         int totalCount = 0;
-        // Calculate total count first
+        BigDecimal totalValue = BigDecimal.ZERO;
         for (int i = 0; i < player.getInventory().size(); i++) {
             ItemStack stack = player.getInventory().getStack(i);
             if (!stack.isEmpty() && stack.getItem() == handStack.getItem()) {
+                BigDecimal stackPrice = EconomyManager.getInstance().getItemPrice(stack);
+                if (stackPrice.compareTo(BigDecimal.ZERO) <= 0) continue;
                 totalCount += stack.getCount();
+                totalValue = totalValue.add(stackPrice.multiply(BigDecimal.valueOf(stack.getCount())));
+                sold.add(stack);
+                player.getInventory().setStack(i, ItemStack.EMPTY);
             }
         }
 
-        BigDecimal totalValue = price.multiply(BigDecimal.valueOf(totalCount));
+        BigDecimal finalTotalValue = totalValue;
+        int finalTotalCount = totalCount;
         
-        if (EconomyManager.getInstance().addBalance(player.getUuid(), totalValue)) {
-            // Only remove items if transaction succeeded
-            for (int i = 0; i < player.getInventory().size(); i++) {
-                ItemStack stack = player.getInventory().getStack(i);
-                if (!stack.isEmpty() && stack.getItem() == handStack.getItem()) {
-                    player.getInventory().setStack(i, ItemStack.EMPTY);
-                }
-            }
-            
-            int finalTotalCount = totalCount;
-            context.getSource().sendFeedback(() -> Text.literal("已出售" + finalTotalCount + " x " + itemId + "您获得了" + EconomyManager.getInstance().format(totalValue)), false);
-            
-
-            
-            savage.commoneconomy.util.TransactionLogger.log("COMMAND_SELL", player.getName().getString(), "Server", totalValue, "Sold all " + finalTotalCount + "x " + itemId);
-            return 1;
-        } else {
-            context.getSource().sendError(Text.literal("支付失败,请重试"));
-            return 0;
-        }
+        EconomyManager manager = EconomyManager.getInstance();
+        manager.addBalanceAsync(player.getUuid(), finalTotalValue)
+                .handleAsync((success, error) -> {
+                    if (error != null) {
+                        savage.commoneconomy.SavsCommonEconomy.LOGGER.error("Failed to pay for sold items", error);
+                    }
+                    if (error != null || !success) {
+                        // Only keep the items if the transaction succeeded
+                        for (ItemStack stack : sold) {
+                            player.getInventory().offerOrDrop(stack);
+                        }
+                        context.getSource().sendError(Text.literal("支付失败,请重试"));
+                        return null;
+                    }
+
+                    context.getSource().sendFeedback(() -> Text.literal("已出售" + finalTotalCount + " x " + itemId + "您获得了" + manager.format(finalTotalValue)), false);
+                    savage.commoneconomy.util.TransactionLogger.log("COMMAND_SELL", player.getName().getString(), "Server", finalTotalValue, "Sold all " + finalTotalCount + "x " + itemId);
+                    return null;
+                }, manager.getMainThreadExecutor());
+        return 1;
     }
 }
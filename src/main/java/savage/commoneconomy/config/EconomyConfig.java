@@ -6,6 +6,7 @@ public class EconomyConfig {
     public BigDecimal defaultBalance = BigDecimal.valueOf(1000);
     public String currencySymbol = "$";
     public boolean symbolBeforeAmount = true;
+    public int currencyScale = 2; // Decimal places balances are kept to
     public boolean enableSellCommands = false;
     public boolean enableChestShops = true;
     
@@ -22,8 +23,55 @@ public class EconomyConfig {
         public int poolSize = 10;
         public long connectionTimeout = 30000;
         public long idleTimeout = 600000;
+        public int snapshotIntervalSeconds = 5; // JSON: max delay before changes reach balances.json, MMAP: how often the file is forced to disk
+        public boolean journalEnabled = true; // JSON backend: fsync every change to an append-only journal
+        public WriteBehindConfig writeBehind = new WriteBehindConfig();
+    }
+
+    // Keeps online players' balances in memory and flushes them to storage in batches
+    public static class WriteBehindConfig {
+        public boolean enabled = false;
+        public long flushIntervalMs = 1000;
+        public int maxDirtyAccounts = 256;
+    }
+
+    public CacheConfig cache = new CacheConfig();
+
+    // Account cache sizing, tune from the hit rates in /ecodebug stats
+    public static class CacheConfig {
+        public long maximumSize = 10000;
+        public long expireAfterWriteSeconds = 600;
+        public long refreshAfterWriteSeconds = 60; // Reloaded in the background when read after this long
+        public long negativeTtlSeconds = 30; // How long unknown UUIDs are remembered as missing
     }
     
+    public BaltopConfig baltop = new BaltopConfig();
+
+    // /baltop is served from a snapshot of the top accounts, rebuilt in the background
+    public static class BaltopConfig {
+        public int size = 100; // Accounts in the snapshot
+        public int pageSize = 10;
+        public long refreshIntervalSeconds = 30;
+        public int refreshAfterChanges = 500; // Rebuild early after this many balance changes
+    }
+
+    public TransactionLogConfig transactionLog = new TransactionLogConfig();
+
+    // Transaction log entries are queued and written in batches by a background thread
+    public static class TransactionLogConfig {
+        public int queueCapacity = 8192;
+        public int batchSize = 256; // Commit once this many entries are waiting...
+        public long flushIntervalMs = 200; // ...or once the oldest has waited this long
+        public OverflowPolicy overflowPolicy = OverflowPolicy.SPILL;
+        public long segmentMaxBytes = 64L * 1024 * 1024; // File log only, segments also roll over daily
+        public FsyncPolicy fsync = FsyncPolicy.INTERVAL; // File log only
+        public long fsyncIntervalMs = 1000;
+        // Recent entries kept in memory to answer short /ecolog windows, 0 disables
+        public int recentCapacity = 4096;
+        public int recentPerPlayer = 32;
+        public int recentPlayers = 1024;
+    }
+
     public RedisConfig redis = new RedisConfig();
     
     public static class RedisConfig {
@@ -42,10 +90,23 @@ public class EconomyConfig {
         NONE
     }
 
+    public enum OverflowPolicy {
+        BLOCK, // Caller waits for room in the queue
+        SPILL, // Caller appends the entry to a file, imported into the database on the next start
+        DROP   // Entry is discarded and counted
+    }
+
+    public enum FsyncPolicy {
+        NONE,     // Leave it to the OS
+        INTERVAL, // At most once per fsyncIntervalMs
+        BATCH     // After every batch
+    }
+
     public enum StorageType {
         JSON,
         SQLITE,
         MYSQL,
-        POSTGRESQL
+        POSTGRESQL,
+        MMAP
     }
 }
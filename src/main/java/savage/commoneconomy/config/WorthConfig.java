@@ -6,6 +6,8 @@ import java.util.Map;
 
 public class WorthConfig {
     public Map<String, BigDecimal> itemPrices = new HashMap<>();
+    // Prices for items with specific components, in /give syntax; these win over itemPrices
+    public Map<String, BigDecimal> componentPrices = new HashMap<>();
 
     public WorthConfig() {
         // Default example
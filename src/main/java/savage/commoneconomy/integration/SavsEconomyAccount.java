@@ -9,7 +9,7 @@ import eu.pb4.common.economy.api.EconomyCurrency;
 import eu.pb4.common.economy.api.EconomyProvider;
 import eu.pb4.common.economy.api.EconomyTransaction;
 import savage.commoneconomy.EconomyManager;
-import java.math.BigDecimal;
+import savage.commoneconomy.util.Money;
 
 public class SavsEconomyAccount implements EconomyAccount {
     private final GameProfile profile;
@@ -49,7 +49,7 @@ public class SavsEconomyAccount implements EconomyAccount {
 
     @Override
     public void setBalance(long value) {
-        EconomyManager.getInstance().setBalance(profile.id(), BigDecimal.valueOf(value));
+        EconomyManager.getInstance().setBalanceUnits(profile.id(), Money.wholeToUnits(value), true);
         sendFeedback("§e[Economy] Balance set to " + currency.formatValue(value, true));
     }
 
@@ -65,7 +65,7 @@ public class SavsEconomyAccount implements EconomyAccount {
 
     public EconomyTransaction decreaseBalance(long value) {
         long current = balance();
-        if (EconomyManager.getInstance().removeBalance(profile.id(), BigDecimal.valueOf(value))) {
+        if (EconomyManager.getInstance().removeBalanceUnits(profile.id(), Money.wholeToUnits(value), true)) {
             sendFeedback("§e[Economy] §c-" + currency.formatValue(value, true));
             return new EconomyTransaction.Simple(true, Text.of("Success"), current - value, value, current, this);
         }
@@ -75,13 +75,30 @@ public class SavsEconomyAccount implements EconomyAccount {
     @Override
     public EconomyTransaction increaseBalance(long value) {
         long current = balance();
-        if (EconomyManager.getInstance().addBalance(profile.id(), BigDecimal.valueOf(value))) {
+        if (EconomyManager.getInstance().addBalanceUnits(profile.id(), Money.wholeToUnits(value), true)) {
             sendFeedback("§e[Economy] §a+" + currency.formatValue(value, true));
             return new EconomyTransaction.Simple(true, Text.of("Success"), current + value, value, current, this);
         }
         return new EconomyTransaction.Simple(false, Text.of("Failed"), current, value, current, this);
     }
 
+    /**
+     * Moves {@code value} from this account into {@code target} as a single atomic operation.
+     * Prefer this over a decreaseBalance/increaseBalance pair when both accounts are ours.
+     */
+    public EconomyTransaction transfer(SavsEconomyAccount target, long value) {
+        EconomyManager.TransferResult result = EconomyManager.getInstance().transferUnits(profile.id(), target.owner(), Money.wholeToUnits(value), true);
+        if (result == null) {
+            long current = balance();
+            return new EconomyTransaction.Simple(false, Text.of("Insufficient funds"), current, value, current, this);
+        }
+
+        long finalBalance = Money.unitsToWhole(result.from.units);
+        sendFeedback("§e[Economy] §c-" + currency.formatValue(value, true));
+        target.sendFeedback("§e[Economy] §a+" + currency.formatValue(value, true));
+        return new EconomyTransaction.Simple(true, Text.of("Success"), finalBalance, value, finalBalance + value, this);
+    }
+
     private void sendFeedback(String message) {
         net.minecraft.server.MinecraftServer server = EconomyManager.getInstance().getServer();
         if (server != null) {
@@ -105,6 +122,7 @@ public class SavsEconomyAccount implements EconomyAccount {
 
     @Override
     public long balance() {
-        return EconomyManager.getInstance().getBalance(profile.id()).longValue();
+        // The Common Economy API counts whole currency, any fraction is dropped
+        return Money.unitsToWhole(EconomyManager.getInstance().getBalanceUnits(profile.id()));
     }
 }
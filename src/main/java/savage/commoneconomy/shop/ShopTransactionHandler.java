@@ -13,6 +13,7 @@ import net.minecraft.world.World;
 import savage.commoneconomy.EconomyManager;
 
 import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
 
 public class ShopTransactionHandler {
     
@@ -27,13 +28,6 @@ public class ShopTransactionHandler {
         // Calculate total price
         BigDecimal totalPrice = shop.getPrice().multiply(BigDecimal.valueOf(amount));
         
-        // Check if player has enough money
-        if (EconomyManager.getInstance().getBalance(player.getUuid()).compareTo(totalPrice) < 0) {
-            player.sendMessage(Text.literal("§c您的余额不足以购买此物品" + 
-                    EconomyManager.getInstance().format(totalPrice)), false);
-            return;
-        }
-        
         // Get chest inventory
         BlockEntity blockEntity = world.getBlockEntity(shop.getChestLocation());
         if (!(blockEntity instanceof ChestBlockEntity chest)) {
@@ -51,16 +45,32 @@ public class ShopTransactionHandler {
             shop.removeStock(removed);
         }
         
-        // Transfer money
-        EconomyManager.getInstance().removeBalance(player.getUuid(), totalPrice);
-        if (!shop.isAdmin()) {
-            EconomyManager.getInstance().addBalance(shop.getOwnerId(), totalPrice);
-            
-
-        }
-        
-
+        // Transfer money off the server thread; funds are checked by the payment itself
+        EconomyManager manager = EconomyManager.getInstance();
+        CompletableFuture<Boolean> payment = shop.isAdmin()
+                ? manager.removeBalanceAsync(player.getUuid(), totalPrice)
+                : manager.transferAsync(player.getUuid(), shop.getOwnerId(), totalPrice).thenApply(result -> result != null);
         
+        payment.handleAsync((paid, error) -> {
+            if (error != null) {
+                savage.commoneconomy.SavsCommonEconomy.LOGGER.error("Shop payment failed", error);
+            }
+            if (error != null || !paid) {
+                // Put the items back so a failed payment doesn't cost the owner stock
+                if (!shop.isAdmin()) {
+                    addItemsToInventory(chest, shop.getItem(), amount);
+                    shop.addStock(amount);
+                }
+                player.sendMessage(Text.literal("§c您的余额不足以购买此物品" + 
+                        manager.format(totalPrice)), false);
+                return null;
+            }
+            completeBuyTransaction(world, player, shop, amount, totalPrice);
+            return null;
+        }, manager.getMainThreadExecutor());
+    }
+    
+    private static void completeBuyTransaction(World world, ServerPlayerEntity player, Shop shop, int amount, BigDecimal totalPrice) {
         // Give items to player
         ItemStack itemToGive = shop.getItem().copy();
         itemToGive.setCount(amount);
@@ -94,14 +104,6 @@ public class ShopTransactionHandler {
         // Calculate total price
         BigDecimal totalPrice = shop.getPrice().multiply(BigDecimal.valueOf(amount));
         
-        // Check if shop owner has enough money (unless admin shop)
-        if (!shop.isAdmin()) {
-            if (EconomyManager.getInstance().getBalance(shop.getOwnerId()).compareTo(totalPrice) < 0) {
-                player.sendMessage(Text.literal("§c商店主人的余额不足以支付给您!"), false);
-                return;
-            }
-        }
-        
         // Get chest inventory
         BlockEntity blockEntity = world.getBlockEntity(shop.getChestLocation());
         if (!(blockEntity instanceof ChestBlockEntity chest)) {
@@ -122,20 +124,49 @@ public class ShopTransactionHandler {
             return;
         }
         
-        // Add items to chest (unless admin shop)
-        if (!shop.isAdmin()) {
-            addItemsToInventory(chest, shop.getItem(), amount);
-            shop.addStock(amount);
-        }
+        // The items stay out of the chest until the payment settles, so the owner can't take them before paying
+        // Transfer money off the server thread; the owner's funds are checked by the payment itself
+        EconomyManager manager = EconomyManager.getInstance();
+        CompletableFuture<Boolean> payment = shop.isAdmin()
+                ? manager.addBalanceAsync(player.getUuid(), totalPrice)
+                : manager.transferAsync(shop.getOwnerId(), player.getUuid(), totalPrice).thenApply(result -> result != null);
         
-        // Transfer money
-        if (!shop.isAdmin()) {
-            EconomyManager.getInstance().removeBalance(shop.getOwnerId(), totalPrice);
+        payment.handleAsync((paid, error) -> {
+            if (error != null) {
+                savage.commoneconomy.SavsCommonEconomy.LOGGER.error("Shop payment failed", error);
+            }
+            if (error != null || !paid) {
+                // Hand the items back to the player
+                ItemStack refund = shop.getItem().copy();
+                refund.setCount(amount);
+                player.getInventory().offerOrDrop(refund);
+                player.sendMessage(Text.literal("§c商店主人的余额不足以支付给您!"), false);
+                return null;
+            }
+            if (!shop.isAdmin()) {
+                depositSoldItems(world, shop, amount);
+            }
+            completeSellTransaction(world, player, shop, amount, totalPrice);
+            return null;
+        }, manager.getMainThreadExecutor());
+    }
+    
+    // The chest may have been filled or broken while the payment was in flight, drop whatever doesn't fit
+    private static void depositSoldItems(World world, Shop shop, int amount) {
+        int added = 0;
+        if (world.getBlockEntity(shop.getChestLocation()) instanceof ChestBlockEntity chest) {
+            added = addItemsToInventory(chest, shop.getItem(), amount);
+            shop.addStock(added);
         }
-        EconomyManager.getInstance().addBalance(player.getUuid(), totalPrice);
-        
-
-        
+        if (added < amount) {
+            ItemStack leftover = shop.getItem().copy();
+            leftover.setCount(amount - added);
+            BlockPos pos = shop.getChestLocation();
+            net.minecraft.util.ItemScatterer.spawn(world, pos.getX() + 0.5, pos.getY() + 1.0, pos.getZ() + 0.5, leftover);
+        }
+    }
+    
+    private static void completeSellTransaction(World world, ServerPlayerEntity player, Shop shop, int amount, BigDecimal totalPrice) {
         // Update sign
         BlockPos signPos = ShopSignHelper.findSignForChest(world, shop.getChestLocation());
         if (signPos != null) {
@@ -190,7 +221,7 @@ public class ShopTransactionHandler {
         return amount - remaining;
     }
     
-    private static void addItemsToInventory(Inventory inventory, ItemStack template, int amount) {
+    private static int addItemsToInventory(Inventory inventory, ItemStack template, int amount) {
         int remaining = amount;
         
         // First, try to stack with existing items
@@ -216,6 +247,7 @@ public class ShopTransactionHandler {
         }
         
         inventory.markDirty();
+        return amount - remaining;
     }
     
     private static boolean hasSpaceForItems(Inventory inventory, ItemStack template, int amount) {
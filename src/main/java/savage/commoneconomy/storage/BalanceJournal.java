@@ -0,0 +1,352 @@
+package savage.commoneconomy.storage;
+
+import savage.commoneconomy.EconomyManager.AccountData;
+import savage.commoneconomy.SavsCommonEconomy;
+import savage.commoneconomy.util.Money;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary journal of account changes for {@link JsonStorage}.
+ * Every record holds the full account state, so replaying a record that is already part of
+ * the snapshot is harmless. Appends are group-committed: one writer thread writes everything
+ * queued since its last pass and fsyncs once for the whole batch.
+ *
+ * The journal is split into numbered segments (balances-N.journal). A snapshot seals the
+ * current segment first and deletes the sealed segments once the snapshot is on disk.
+ */
+public class BalanceJournal {
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final String PREFIX = "balances-";
+    private static final String SUFFIX = ".journal";
+    // Largest payload we write: a PUT with a name of 65535 UTF-8 bytes
+    private static final int MAX_RECORD = 1 + 16 + 8 + 1 + 8 + 2 + 65535;
+
+    private final Path dir;
+    private final Object queueLock = new Object();
+    private final Object ioLock = new Object();
+    private List<Pending> queue = new ArrayList<>();
+    private FileChannel channel;
+    private long segment;
+    private final Thread writer;
+    private boolean closed; // Guarded by queueLock
+
+    private static class Pending {
+        final byte[] record;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(byte[] record) {
+            this.record = record;
+        }
+    }
+
+    public BalanceJournal(Path dir) throws IOException {
+        this.dir = dir;
+        long last = 0;
+        for (long existing : listSegments()) {
+            last = Math.max(last, existing);
+        }
+        this.segment = last + 1;
+        this.channel = openSegment(segment);
+
+        this.writer = new Thread(this::runWriter, "savs-economy-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues the account's current state. The future completes once the record is fsynced.
+     * Call while holding the account's lock so records for one account keep their order.
+     */
+    public CompletableFuture<Void> appendPut(UUID uuid, AccountData data) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(PUT);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+            out.writeLong(data.version);
+            out.writeByte(Money.getScale());
+            out.writeLong(data.units);
+            out.writeUTF(data.name != null ? data.name : "Unknown");
+            return enqueue(frame(bytes.toByteArray()));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public CompletableFuture<Void> appendDelete(UUID uuid) {
+        ByteBuffer payload = ByteBuffer.allocate(17);
+        payload.put(DELETE);
+        payload.putLong(uuid.getMostSignificantBits());
+        payload.putLong(uuid.getLeastSignificantBits());
+        return enqueue(frame(payload.array()));
+    }
+
+    // [length][crc32][payload], the checksum lets replay stop cleanly at a torn tail
+    private static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer framed = ByteBuffer.allocate(8 + payload.length);
+        framed.putInt(payload.length);
+        framed.putInt((int) crc.getValue());
+        framed.put(payload);
+        return framed.array();
+    }
+
+    private CompletableFuture<Void> enqueue(byte[] record) {
+        Pending pending = new Pending(record);
+        synchronized (queueLock) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IOException("Balance journal is closed"));
+            }
+            queue.add(pending);
+            queueLock.notify();
+        }
+        return pending.done;
+    }
+
+    private void runWriter() {
+        while (true) {
+            synchronized (queueLock) {
+                while (queue.isEmpty()) {
+                    if (closed) return;
+                    try {
+                        queueLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            // Take the batch under ioLock so rotate() can't seal newer records ahead of it
+            synchronized (ioLock) {
+                List<Pending> batch;
+                synchronized (queueLock) {
+                    batch = queue;
+                    queue = new ArrayList<>();
+                }
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                }
+            }
+        }
+    }
+
+    // Must hold ioLock
+    private void writeBatch(List<Pending> batch) {
+        try {
+            int size = 0;
+            for (Pending pending : batch) {
+                size += pending.record.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (Pending pending : batch) {
+                buffer.put(pending.record);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            for (Pending pending : batch) {
+                pending.done.complete(null);
+            }
+        } catch (IOException e) {
+            for (Pending pending : batch) {
+                pending.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Writes out anything still queued and starts a new segment. Every record in the sealed
+     * segments is already applied in memory, so a snapshot taken afterwards covers them.
+     *
+     * @return the number of the last sealed segment
+     */
+    public long rotate() throws IOException {
+        synchronized (ioLock) {
+            List<Pending> batch;
+            synchronized (queueLock) {
+                batch = queue;
+                queue = new ArrayList<>();
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+            channel.close();
+            long sealed = segment;
+            segment++;
+            channel = openSegment(segment);
+            return sealed;
+        }
+    }
+
+    /**
+     * Writes out anything still queued, stops the writer thread and closes the current segment.
+     * Appends made afterwards fail.
+     */
+    public void close() {
+        synchronized (queueLock) {
+            closed = true;
+            queueLock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (ioLock) {
+            List<Pending> batch;
+            synchronized (queueLock) {
+                batch = queue;
+                queue = new ArrayList<>();
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Deletes segments folded into a snapshot.
+     */
+    public void deleteSegmentsThrough(long sealed) {
+        for (long existing : listSegments()) {
+            if (existing <= sealed) {
+                try {
+                    Files.deleteIfExists(segmentPath(existing));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies all sealed segments on top of the loaded snapshot, oldest first.
+     *
+     * @return the number of records replayed
+     */
+    public int replay(Map<UUID, AccountData> accounts) {
+        List<Long> segments = listSegments();
+        segments.sort(null);
+        int replayed = 0;
+        for (long existing : segments) {
+            if (existing >= segment) continue; // Our own, still open
+            replayed += replaySegment(segmentPath(existing), accounts);
+        }
+        return replayed;
+    }
+
+    private int replaySegment(Path path, Map<UUID, AccountData> accounts) {
+        int replayed = 0;
+        try (InputStream stream = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break; // Clean end of segment
+                }
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD) {
+                    SavsCommonEconomy.LOGGER.warn("Corrupt record length " + length + " in " + path.getFileName() + ", ignoring the rest of the segment");
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    SavsCommonEconomy.LOGGER.warn("Corrupt record in " + path.getFileName() + ", ignoring the rest of the segment");
+                    break;
+                }
+                apply(payload, accounts);
+                replayed++;
+            }
+        } catch (EOFException e) {
+            SavsCommonEconomy.LOGGER.warn("Truncated record at the end of " + path.getFileName() + ", ignoring it");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return replayed;
+    }
+
+    private static void apply(byte[] payload, Map<UUID, AccountData> accounts) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        UUID uuid = new UUID(in.readLong(), in.readLong());
+        if (type == DELETE) {
+            accounts.remove(uuid);
+            return;
+        }
+
+        long version = in.readLong();
+        int scale = in.readByte();
+        long units = in.readLong();
+        String name = in.readUTF();
+        if (scale != Money.getScale()) {
+            // Written before currencyScale was changed
+            units = Money.toUnits(BigDecimal.valueOf(units, scale));
+        }
+        AccountData current = accounts.get(uuid);
+        if (current != null && version < current.version) {
+            return; // Older than what we already have, e.g. the snapshot already covers it
+        }
+        accounts.put(uuid, new AccountData(name, units, version));
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(long number) {
+        return dir.resolve(PREFIX + number + SUFFIX);
+    }
+
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<>();
+        try (var files = Files.list(dir)) {
+            files.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    try {
+                        segments.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,80 @@
+package savage.commoneconomy.storage;
+
+import savage.commoneconomy.EconomyManager.AccountData;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-then-compare-and-set balance updates over {@link EconomyStorage#setBalance(UUID, long, long)},
+ * the default for backends that can't add a delta in a single server-side update.
+ * A version conflict is retried straight away, there is no backoff sleep.
+ */
+public class CasFallback {
+    private static final int MAX_ATTEMPTS = 50;
+
+    // Surfaced through /ecodebug stats
+    private static final AtomicLong updates = new AtomicLong();
+    private static final AtomicLong retries = new AtomicLong();
+    private static final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Same contract as {@link EconomyStorage#applyDelta}. Blocks on storage, so only call it on storage threads.
+     */
+    static AccountData applyDelta(EconomyStorage storage, UUID uuid, long delta) {
+        return update(storage, uuid, delta, true);
+    }
+
+    /**
+     * Same contract as {@link EconomyStorage#applyDeltas}, one CAS loop per account in UUID order.
+     */
+    static Map<UUID, AccountData> applyDeltas(EconomyStorage storage, Map<UUID, Long> deltas) {
+        Map<UUID, AccountData> result = new TreeMap<>();
+        for (Map.Entry<UUID, Long> entry : new TreeMap<>(deltas).entrySet()) {
+            AccountData data = update(storage, entry.getKey(), entry.getValue(), false);
+            if (data != null) {
+                result.put(entry.getKey(), data);
+            }
+        }
+        return result.isEmpty() && !deltas.isEmpty() ? null : result;
+    }
+
+    private static AccountData update(EconomyStorage storage, UUID uuid, long delta, boolean checkFunds) {
+        updates.incrementAndGet();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            AccountData current = storage.getAccount(uuid);
+            if (current == null) {
+                return null; // Missing account, refused rather than created
+            }
+            long updated;
+            try {
+                updated = Math.addExact(current.units, delta);
+            } catch (ArithmeticException e) {
+                return null;
+            }
+            if (checkFunds && delta < 0 && updated < 0) {
+                return null; // Insufficient funds
+            }
+            if (storage.setBalance(uuid, updated, current.version)) {
+                return new AccountData(current.name, updated, current.version + 1);
+            }
+            retries.incrementAndGet(); // Someone else changed the account in between, read it again
+        }
+        failures.incrementAndGet();
+        return null;
+    }
+
+    public static long getUpdates() {
+        return updates.get();
+    }
+
+    public static long getRetries() {
+        return retries.get();
+    }
+
+    public static long getFailures() {
+        return failures.get();
+    }
+}
@@ -2,30 +2,161 @@ package savage.commoneconomy.storage;
 
 import java.math.BigDecimal;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import savage.commoneconomy.EconomyManager.AccountData;
+import savage.commoneconomy.EconomyManager.TransferResult;
 
+/**
+ * Account storage backend. All balances and amounts are in minor units, see {@link savage.commoneconomy.util.Money}.
+ */
 public interface EconomyStorage {
     void load();
     void save();
     
-    BigDecimal getBalance(UUID uuid);
-    void setBalance(UUID uuid, BigDecimal amount);
-    boolean setBalance(UUID uuid, BigDecimal amount, long expectedVersion);
+    long getBalance(UUID uuid);
+    void setBalance(UUID uuid, long units);
+    boolean setBalance(UUID uuid, long units, long expectedVersion);
+    
+    /**
+     * Moves {@code units} from one account to another as a single atomic operation.
+     * Both legs either apply together or not at all.
+     *
+     * @return the resulting state of both accounts, or {@code null} if the source has
+     *         insufficient funds or the transfer could not be completed
+     */
+    TransferResult transfer(UUID from, UUID to, long units);
+    
+    /**
+     * Adds {@code delta} (which may be negative) to the stored balance in a single
+     * server-side update, refusing any change that would leave the balance negative.
+     *
+     * The default is a read-then-CAS loop over {@link #setBalance(UUID, long, long)} for backends
+     * that can't do that, see {@link CasFallback}. Like every storage call it blocks, so it only runs on storage threads.
+     *
+     * @return the account after the update, or {@code null} if it was refused or the account is missing
+     */
+    default AccountData applyDelta(UUID uuid, long delta) {
+        return CasFallback.applyDelta(this, uuid, delta);
+    }
+    
+    /**
+     * Adds each delta to its account in one batch without any funds check; callers have
+     * already validated the balances. Missing accounts, and deltas that would overflow the balance, are skipped.
+     *
+     * The default falls back to one CAS loop per account, see {@link #applyDelta}.
+     *
+     * @return the updated accounts, or {@code null} if nothing was written
+     */
+    default Map<UUID, AccountData> applyDeltas(Map<UUID, Long> deltas) {
+        return CasFallback.applyDeltas(this, deltas);
+    }
+    
+    /**
+     * Applies several deltas with the same funds check as {@link #applyDelta}. With {@code atomic}
+     * set, one refused delta cancels the whole batch; otherwise refused deltas are just left out.
+     *
+     * The default applies each delta on its own and undoes the applied ones with {@link #applyDeltas}
+     * if an atomic batch is refused, so other readers may briefly see part of the batch. SQL backends override this
+     * with a single transaction.
+     *
+     * @return the updated accounts, or {@code null} if an atomic batch was refused or the batch failed
+     */
+    default Map<UUID, AccountData> applyBatch(Map<UUID, Long> deltas, boolean atomic) {
+        Map<UUID, AccountData> result = new LinkedHashMap<>();
+        for (Map.Entry<UUID, Long> entry : deltas.entrySet()) {
+            AccountData data = applyDelta(entry.getKey(), entry.getValue());
+            if (data != null) {
+                result.put(entry.getKey(), data);
+            } else if (atomic) {
+                // Undo without the funds check, a credit may already have been spent
+                Map<UUID, Long> undo = new LinkedHashMap<>();
+                for (UUID applied : result.keySet()) {
+                    undo.put(applied, -deltas.get(applied));
+                }
+                Map<UUID, AccountData> undone = undo.isEmpty() ? Map.of() : applyDeltas(undo);
+                if (undone == null || undone.size() < undo.size()) {
+                    savage.commoneconomy.SavsCommonEconomy.LOGGER.error("Could not undo a refused balance batch, these changes were kept: " + undo);
+                }
+                return null;
+            }
+        }
+        return result;
+    }
     
     boolean hasAccount(UUID uuid);
     AccountData getAccount(UUID uuid);
+    
+    /**
+     * Loads several accounts at once. Missing accounts are left out of the result.
+     */
+    default Map<UUID, AccountData> getAccounts(Collection<UUID> uuids) {
+        Map<UUID, AccountData> result = new LinkedHashMap<>();
+        for (UUID uuid : uuids) {
+            AccountData data = getAccount(uuid);
+            if (data != null) {
+                result.put(uuid, data);
+            }
+        }
+        return result;
+    }
     void createAccount(UUID uuid, String name);
     
+    /**
+     * Creates the account or updates its name, then returns its current state.
+     * Used on join so the account is ready and cached in one step.
+     *
+     * @return the account, or {@code null} if it could not be created
+     */
+    default AccountData loadOrCreateAccount(UUID uuid, String name) {
+        createAccount(uuid, name);
+        return getAccount(uuid);
+    }
+    
     UUID getUUID(String name);
     Collection<String> getOfflinePlayerNames();
     List<AccountData> getTopAccounts(int limit);
     
+    /**
+     * Passes every account to {@code consumer}, e.g. to build the rank index on load.
+     */
+    void forEachAccount(java.util.function.BiConsumer<UUID, AccountData> consumer);
+    
     void logTransaction(long timestamp, String source, String target, BigDecimal amount, String type, String details);
     
+    /**
+     * Writes several log entries at once.
+     *
+     * @return false if nothing was written and the entries should be kept elsewhere
+     */
+    default boolean logTransactions(List<savage.commoneconomy.util.TransactionLogger.LogEntry> entries) {
+        for (savage.commoneconomy.util.TransactionLogger.LogEntry entry : entries) {
+            logTransaction(entry.epochMillis(), entry.source, entry.target, entry.amount, entry.type, entry.details);
+        }
+        return true;
+    }
+    
     List<savage.commoneconomy.util.TransactionLogger.LogEntry> searchLogs(String target, long cutoffTimestamp);
     
+    /**
+     * One page of log entries, newest first. {@code target} is {@code *} for everyone, a name for an
+     * exact participant match, or a name prefix ending in {@code *}.
+     *
+     * @param after only return entries older than this position, or null to page by {@code skip}
+     */
+    default List<savage.commoneconomy.util.TransactionLogger.LogEntry> searchLogs(String target, long cutoffTimestamp,
+                                                                                  savage.commoneconomy.util.TransactionLogger.LogCursor after, int skip, int limit) {
+        List<savage.commoneconomy.util.TransactionLogger.LogEntry> all = searchLogs(target, cutoffTimestamp);
+        int from = Math.min(skip, all.size());
+        return all.subList(from, (int) Math.min(all.size(), (long) from + limit));
+    }
+    
+    default int countLogs(String target, long cutoffTimestamp) {
+        return searchLogs(target, cutoffTimestamp).size();
+    }
+    
     void deleteAccount(UUID uuid);
 }
@@ -2,39 +2,161 @@ package savage.commoneconomy.storage;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import net.fabricmc.loader.api.FabricLoader;
 import savage.commoneconomy.EconomyManager;
 import savage.commoneconomy.EconomyManager.AccountData;
+import savage.commoneconomy.EconomyManager.TransferResult;
+import savage.commoneconomy.util.Money;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class JsonStorage implements EconomyStorage {
-    private final Map<UUID, AccountData> accounts = new HashMap<>();
+    // Striped per-account locks: writers to different accounts never contend on one monitor
+    private static final int LOCK_STRIPES = 64;
+
+    private final Map<UUID, AccountData> accounts = new ConcurrentHashMap<>();
+    // Lowercase name -> owning account; when names collide after renames the latest to claim it wins
+    private final Map<String, UUID> uuidsByName = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Object saveLock = new Object();
     private final File balanceFile;
+    private final File tempFile;
     private final Gson gson;
     private final EconomyManager manager;
 
+    // Mutations only mark the store dirty, a background task writes at most one snapshot per interval
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final ScheduledExecutorService snapshotter;
+
+    // Durable record of every change since the last snapshot, null if disabled
+    private volatile BalanceJournal journal; // Opened by load, closed by save
+
     public JsonStorage(EconomyManager manager) {
         this.manager = manager;
         Path configDir = FabricLoader.getInstance().getConfigDir().resolve("savs-common-economy");
         configDir.toFile().mkdirs();
         this.balanceFile = configDir.resolve("balances.json").toFile();
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this.tempFile = configDir.resolve("balances.json.tmp").toFile();
+        this.gson = new GsonBuilder().registerTypeAdapter(AccountData.class, new AccountDataAdapter()).create();
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+
+        long interval = Math.max(1, manager.getConfig().storage.snapshotIntervalSeconds);
+        this.snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "savs-economy-json-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.snapshotter.scheduleWithFixedDelay(() -> {
+            if (dirty.get()) {
+                writeSnapshot();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    private void markDirty() {
+        dirty.set(true);
+    }
+
+    // Must hold the account's stripe lock so the journal sees its changes in order
+    private CompletableFuture<Void> journalPut(UUID uuid, AccountData data) {
+        BalanceJournal current = journal;
+        return current != null ? current.appendPut(uuid, data) : null;
+    }
+
+    // Call after releasing the stripe lock, blocks until the change is on disk
+    private static void awaitJournal(CompletableFuture<Void> write) {
+        if (write == null) return;
+        try {
+            write.join();
+        } catch (CompletionException e) {
+            // The change is still applied in memory and will reach disk with the next snapshot
+            savage.commoneconomy.SavsCommonEconomy.LOGGER.error("Failed to write balance journal", e.getCause());
+        }
+    }
+
+    // Keeps balances.json in decimal form, independent of the in-memory minor units
+    private static class AccountDataAdapter extends TypeAdapter<AccountData> {
+        @Override
+        public void write(JsonWriter out, AccountData data) throws IOException {
+            out.beginObject();
+            out.name("name").value(data.name);
+            out.name("balance").value(Money.fromUnits(data.units));
+            out.name("version").value(data.version);
+            out.endObject();
+        }
+
+        @Override
+        public AccountData read(JsonReader in) throws IOException {
+            String name = "Unknown";
+            BigDecimal balance = BigDecimal.ZERO;
+            long version = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name" -> name = in.nextString();
+                    case "balance" -> balance = new BigDecimal(in.nextString());
+                    case "version" -> version = in.nextLong();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new AccountData(name, balance, version);
+        }
+    }
+
+    private Object lockFor(UUID uuid) {
+        return locks[stripe(uuid)];
+    }
+
+    private static int stripe(UUID uuid) {
+        int h = uuid.hashCode();
+        return (h ^ (h >>> 16)) & (LOCK_STRIPES - 1);
+    }
+
+    // Must hold the account's stripe lock
+    private AccountData getOrCreate(UUID uuid) {
+        return accounts.computeIfAbsent(uuid, k -> new AccountData("Unknown", manager.getConfig().defaultBalance));
+    }
+
+    // Must hold the account's stripe lock, hands out a copy so callers can't mutate the stored account
+    private static AccountData copy(AccountData data) {
+        return new AccountData(data.name, data.units, data.version);
     }
 
     @Override
     public void load() {
         if (balanceFile.exists()) {
-            try (FileReader reader = new FileReader(balanceFile)) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(balanceFile), StandardCharsets.UTF_8)) {
                 Type type = new TypeToken<HashMap<UUID, AccountData>>() {}.getType();
                 Map<UUID, AccountData> loaded = gson.fromJson(reader, type);
                 if (loaded != null) {
@@ -44,49 +166,269 @@ public class JsonStorage implements EconomyStorage {
                 e.printStackTrace();
             }
         }
+
+        if (journal == null && manager.getConfig().storage.journalEnabled) {
+            try {
+                journal = new BalanceJournal(balanceFile.toPath().getParent());
+            } catch (IOException e) {
+                savage.commoneconomy.SavsCommonEconomy.LOGGER.error("Failed to open balance journal, changes are only saved by snapshots", e);
+            }
+        }
+        if (journal != null) {
+            int replayed = journal.replay(accounts);
+            if (replayed > 0) {
+                savage.commoneconomy.SavsCommonEconomy.LOGGER.info("Replayed " + replayed + " balance journal records");
+                // Fold the replayed records into a fresh snapshot right away
+                writeSnapshot();
+            }
+        }
+
+        uuidsByName.clear();
+        for (UUID uuid : accounts.keySet()) {
+            indexName(uuid);
+        }
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    // Claims the account's name unless an account that looks more recently used already holds it.
+    // Only used on load and when a name is given up, where we don't know who claimed it last.
+    private void indexName(UUID uuid) {
+        AccountData data = accounts.get(uuid);
+        if (data == null || data.name == null) return;
+        uuidsByName.merge(nameKey(data.name), uuid, this::preferredOwner);
+    }
+
+    private UUID preferredOwner(UUID a, UUID b) {
+        AccountData first = accounts.get(a);
+        AccountData second = accounts.get(b);
+        if (first == null) return b;
+        if (second == null) return a;
+        // Higher version means more balance changes, tie broken by UUID so every load agrees
+        int byVersion = Long.compare(first.version, second.version);
+        if (byVersion != 0) return byVersion > 0 ? a : b;
+        return a.compareTo(b) <= 0 ? a : b;
     }
 
+    // The account no longer goes by this name; hand it to another account with the same name if there is one
+    private void releaseName(String name, UUID uuid) {
+        String key = nameKey(name);
+        if (!uuidsByName.remove(key, uuid)) return;
+        for (Map.Entry<UUID, AccountData> entry : accounts.entrySet()) {
+            String other = entry.getValue().name;
+            if (!entry.getKey().equals(uuid) && other != null && nameKey(other).equals(key)) {
+                indexName(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Forces a snapshot now, used on shutdown. Regular mutations are written by the background snapshotter.
+     */
     @Override
     public void save() {
-        try (FileWriter writer = new FileWriter(balanceFile)) {
-            gson.toJson(accounts, writer);
-        } catch (IOException e) {
-            e.printStackTrace();
+        writeSnapshot();
+        // Everything is in the snapshot now, stop the journal's writer thread
+        BalanceJournal current = journal;
+        if (current != null) {
+            journal = null;
+            current.close();
+        }
+    }
+
+    /**
+     * Writes a consistent copy of all accounts to a temp file, fsyncs it and renames it over
+     * balances.json, so a crash mid-write never leaves a truncated file behind.
+     */
+    private void writeSnapshot() {
+        synchronized (saveLock) {
+            // Clear first so changes made while we write trigger the next snapshot
+            dirty.set(false);
+
+            // Seal the journal first: every record in it is already applied, so the copy below covers it
+            long sealed = -1;
+            BalanceJournal current = journal;
+            if (current != null) {
+                try {
+                    sealed = current.rotate();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            Map<UUID, AccountData> snapshot = new HashMap<>(accounts.size() * 2);
+            for (Map.Entry<UUID, AccountData> entry : accounts.entrySet()) {
+                synchronized (lockFor(entry.getKey())) {
+                    snapshot.put(entry.getKey(), copy(entry.getValue()));
+                }
+            }
+
+            try {
+                try (FileOutputStream out = new FileOutputStream(tempFile);
+                     Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                    gson.toJson(snapshot, writer);
+                    writer.flush();
+                    out.getFD().sync();
+                }
+                try {
+                    Files.move(tempFile.toPath(), balanceFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile.toPath(), balanceFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                if (sealed >= 0) {
+                    current.deleteSegmentsThrough(sealed);
+                }
+            } catch (IOException e) {
+                dirty.set(true); // Retry on the next run
+                e.printStackTrace();
+            }
         }
     }
 
     @Override
-    public BigDecimal getBalance(UUID uuid) {
-        return accounts.containsKey(uuid) ? accounts.get(uuid).balance : manager.getConfig().defaultBalance;
+    public long getBalance(UUID uuid) {
+        AccountData data = accounts.get(uuid);
+        if (data == null) {
+            return Money.toUnits(manager.getConfig().defaultBalance);
+        }
+        synchronized (lockFor(uuid)) {
+            return data.units;
+        }
     }
 
     @Override
-    public void setBalance(UUID uuid, BigDecimal amount) {
-        AccountData data = accounts.computeIfAbsent(uuid, k -> new AccountData("Unknown", manager.getConfig().defaultBalance));
-        data.balance = amount;
-        data.version++;
-        save();
+    public void setBalance(UUID uuid, long units) {
+        CompletableFuture<Void> write;
+        synchronized (lockFor(uuid)) {
+            AccountData data = getOrCreate(uuid);
+            data.units = units;
+            data.version++;
+            write = journalPut(uuid, data);
+        }
+        awaitJournal(write);
+        markDirty();
     }
 
     @Override
-    public synchronized boolean setBalance(UUID uuid, BigDecimal amount, long expectedVersion) {
-        AccountData data = accounts.get(uuid);
-        if (data == null) {
-            // Account doesn't exist, create it
-            data = new AccountData("Unknown", manager.getConfig().defaultBalance);
-            accounts.put(uuid, data);
-        }
-        
-        if (data.version != expectedVersion) {
-            return false; // Optimistic lock failure
-        }
-        
-        data.balance = amount;
-        data.version++;
-        save();
+    public boolean setBalance(UUID uuid, long units, long expectedVersion) {
+        CompletableFuture<Void> write;
+        synchronized (lockFor(uuid)) {
+            AccountData data = getOrCreate(uuid);
+            if (data.version != expectedVersion) {
+                return false; // Optimistic lock failure
+            }
+
+            data.units = units;
+            data.version++;
+            write = journalPut(uuid, data);
+        }
+        awaitJournal(write);
+        markDirty();
         return true;
     }
 
+    @Override
+    public TransferResult transfer(UUID from, UUID to, long units) {
+        // Take both stripes in index order so opposing transfers can't deadlock
+        int a = stripe(from);
+        int b = stripe(to);
+        Object first = locks[Math.min(a, b)];
+        Object second = locks[Math.max(a, b)];
+
+        TransferResult result;
+        CompletableFuture<Void> sourceWrite;
+        CompletableFuture<Void> targetWrite;
+        synchronized (first) {
+            synchronized (second) {
+                // Like the SQL backends, refuse rather than create missing accounts
+                AccountData source = accounts.get(from);
+                AccountData target = accounts.get(to);
+                if (source == null || target == null) {
+                    return null;
+                }
+                if (source.units < units) {
+                    return null; // Insufficient funds
+                }
+                long credited;
+                try {
+                    credited = Math.addExact(target.units, units);
+                } catch (ArithmeticException e) {
+                    return null;
+                }
+
+                source.units -= units;
+                source.version++;
+                target.units = credited;
+                target.version++;
+                result = new TransferResult(copy(source), copy(target));
+                sourceWrite = journalPut(from, source);
+                targetWrite = journalPut(to, target);
+            }
+        }
+        awaitJournal(sourceWrite);
+        awaitJournal(targetWrite);
+        markDirty();
+        return result;
+    }
+
+    @Override
+    public AccountData applyDelta(UUID uuid, long delta) {
+        AccountData result;
+        CompletableFuture<Void> write;
+        synchronized (lockFor(uuid)) {
+            AccountData data = accounts.get(uuid);
+            if (data == null) {
+                return null; // Missing account, refused rather than created
+            }
+            long updated;
+            try {
+                updated = Math.addExact(data.units, delta);
+            } catch (ArithmeticException e) {
+                return null;
+            }
+            if (delta < 0 && updated < 0) {
+                return null; // Insufficient funds
+            }
+
+            data.units = updated;
+            data.version++;
+            result = copy(data);
+            write = journalPut(uuid, data);
+        }
+        awaitJournal(write);
+        markDirty();
+        return result;
+    }
+
+    @Override
+    public Map<UUID, AccountData> applyDeltas(Map<UUID, Long> deltas) {
+        Map<UUID, AccountData> result = new HashMap<>();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (Map.Entry<UUID, Long> entry : deltas.entrySet()) {
+            synchronized (lockFor(entry.getKey())) {
+                AccountData data = accounts.get(entry.getKey());
+                if (data == null) continue;
+                long updated;
+                try {
+                    updated = Math.addExact(data.units, entry.getValue());
+                } catch (ArithmeticException e) {
+                    // Refused on its own like applyDelta does, the rest of the batch still applies
+                    savage.commoneconomy.SavsCommonEconomy.LOGGER.warn("Refusing delta " + entry.getValue() + " for " + entry.getKey() + ", the balance would overflow");
+                    continue;
+                }
+                data.units = updated;
+                data.version++;
+                result.put(entry.getKey(), copy(data));
+                writes.add(journalPut(entry.getKey(), data));
+            }
+        }
+        writes.forEach(JsonStorage::awaitJournal);
+        markDirty();
+        return result;
+    }
+
     @Override
     public boolean hasAccount(UUID uuid) {
         return accounts.containsKey(uuid);
@@ -94,32 +436,42 @@ public class JsonStorage implements EconomyStorage {
 
     @Override
     public AccountData getAccount(UUID uuid) {
-        return accounts.get(uuid);
+        synchronized (lockFor(uuid)) {
+            AccountData data = accounts.get(uuid);
+            return data != null ? copy(data) : null;
+        }
     }
 
     @Override
     public void createAccount(UUID uuid, String name) {
-        if (!accounts.containsKey(uuid)) {
-            accounts.put(uuid, new AccountData(name, manager.getConfig().defaultBalance));
-            save();
-        } else {
-            // Update name if changed
+        CompletableFuture<Void> write;
+        String oldName = null;
+        synchronized (lockFor(uuid)) {
+            // Whoever joins with a name last owns it, even if another account still has it stored
+            uuidsByName.put(nameKey(name), uuid);
             AccountData data = accounts.get(uuid);
-            if (!data.name.equals(name)) {
+            if (data == null) {
+                data = new AccountData(name, manager.getConfig().defaultBalance);
+                accounts.put(uuid, data);
+            } else if (!data.name.equals(name)) {
+                // Update name if changed
+                oldName = data.name;
                 data.name = name;
-                save();
+            } else {
+                return;
             }
+            write = journalPut(uuid, data);
         }
+        if (oldName != null && !nameKey(oldName).equals(nameKey(name))) {
+            releaseName(oldName, uuid);
+        }
+        awaitJournal(write);
+        markDirty();
     }
 
     @Override
     public UUID getUUID(String name) {
-        for (Map.Entry<UUID, AccountData> entry : accounts.entrySet()) {
-            if (entry.getValue().name.equalsIgnoreCase(name)) {
-                return entry.getKey();
-            }
-        }
-        return null;
+        return uuidsByName.get(nameKey(name));
     }
 
     @Override
@@ -138,18 +490,44 @@ public class JsonStorage implements EconomyStorage {
 
     @Override
     public List<AccountData> getTopAccounts(int limit) {
-        return accounts.values().stream()
-                .sorted((a, b) -> b.balance.compareTo(a.balance))
+        return accounts.entrySet().stream()
+                .map(e -> {
+                    synchronized (lockFor(e.getKey())) {
+                        return copy(e.getValue());
+                    }
+                })
+                .sorted((a, b) -> Long.compare(b.units, a.units))
                 .limit(limit)
                 .collect(Collectors.toList());
     }
+    @Override
+    public void forEachAccount(java.util.function.BiConsumer<UUID, AccountData> consumer) {
+        for (Map.Entry<UUID, AccountData> entry : accounts.entrySet()) {
+            AccountData data;
+            synchronized (lockFor(entry.getKey())) {
+                data = copy(entry.getValue());
+            }
+            consumer.accept(entry.getKey(), data);
+        }
+    }
+
     @Override
     public List<savage.commoneconomy.util.TransactionLogger.LogEntry> searchLogs(String target, long cutoffTimestamp) {
         return Collections.emptyList(); // JsonStorage relies on file logging
     }
     @Override
     public void deleteAccount(UUID uuid) {
-        accounts.remove(uuid);
-        save();
+        CompletableFuture<Void> write;
+        AccountData removed;
+        synchronized (lockFor(uuid)) {
+            removed = accounts.remove(uuid);
+            BalanceJournal current = journal;
+            write = current != null ? current.appendDelete(uuid) : null;
+        }
+        if (removed != null && removed.name != null) {
+            releaseName(removed.name, uuid);
+        }
+        awaitJournal(write);
+        markDirty();
     }
 }
@@ -0,0 +1,665 @@
+package savage.commoneconomy.storage;
+
+import net.fabricmc.loader.api.FabricLoader;
+import savage.commoneconomy.EconomyManager;
+import savage.commoneconomy.EconomyManager.AccountData;
+import savage.commoneconomy.EconomyManager.TransferResult;
+import savage.commoneconomy.util.Money;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Single-node storage that keeps accounts as fixed-size records in a memory-mapped file.
+ * An in-memory open-addressing index maps UUIDs to record slots; it is rebuilt from the
+ * records on startup, so nothing has to be parsed.
+ *
+ * Record reads and writes run under the shared lock plus a per-account stripe lock.
+ * Creating, deleting and growing the file take the exclusive lock.
+ *
+ * Changes reach the page cache immediately, so they survive a JVM crash. Dirty pages are
+ * forced to disk every snapshotIntervalSeconds and on shutdown, so a power loss can lose
+ * the changes of that last interval.
+ */
+public class MmapStorage implements EconomyStorage {
+    private static final int MAGIC = 0x53454D4D; // "SEMM"
+    private static final int FORMAT = 1;
+
+    // Header: magic, format, currency scale, capacity, high water mark
+    private static final int HEADER_SIZE = 64;
+    private static final int H_CAPACITY = 12;
+    private static final int H_HIGH_WATER = 16;
+
+    // Record: uuid (2 longs), balance, version, flags, name length, name bytes
+    private static final int RECORD_SIZE = 96;
+    private static final int R_MSB = 0;
+    private static final int R_LSB = 8;
+    private static final int R_BALANCE = 16;
+    private static final int R_VERSION = 24;
+    private static final int R_FLAGS = 32;
+    private static final int R_NAME_LENGTH = 33;
+    private static final int R_NAME = 34;
+    private static final int MAX_NAME_BYTES = RECORD_SIZE - R_NAME;
+    private static final byte FLAG_USED = 1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int LOCK_STRIPES = 64;
+
+    private final EconomyManager manager;
+    private final Path file;
+    private final ReadWriteLock structureLock = new ReentrantReadWriteLock();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int highWater;
+    private final ArrayDeque<Integer> freeRecords = new ArrayDeque<>();
+
+    // Open-addressing index with linear probing, holds record + 1 (0 = empty slot)
+    private int[] index;
+    // Lowercase name -> owning account, so name lookups don't decode every record
+    private final Map<String, UUID> uuidsByName = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+
+    public MmapStorage(EconomyManager manager) {
+        this.manager = manager;
+        Path configDir = FabricLoader.getInstance().getConfigDir().resolve("savs-common-economy");
+        configDir.toFile().mkdirs();
+        this.file = configDir.resolve("accounts.mmap");
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void load() {
+        structureLock.writeLock().lock();
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+
+            if (channel.size() < HEADER_SIZE) {
+                capacity = INITIAL_CAPACITY;
+                highWater = 0;
+                map();
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, FORMAT);
+                buffer.putInt(8, Money.getScale());
+                writeHeader();
+            } else {
+                capacity = (int) ((channel.size() - HEADER_SIZE) / RECORD_SIZE);
+                map();
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT) {
+                    throw new IOException("Unsupported account file format: " + file);
+                }
+                if (buffer.getInt(8) != Money.getScale()) {
+                    // Balances are stored as raw minor units, reinterpreting them would silently change every balance
+                    throw new IOException(file + " was written with currencyScale " + buffer.getInt(8) + " but currencyScale is " + Money.getScale());
+                }
+                highWater = buffer.getInt(H_HIGH_WATER);
+            }
+
+            // Rebuild the index and free list straight from the records
+            freeRecords.clear();
+            index = new int[tableSizeFor(capacity)];
+            for (int record = 0; record < highWater; record++) {
+                if (buffer.get(offset(record) + R_FLAGS) == FLAG_USED) {
+                    indexInsert(record);
+                } else {
+                    freeRecords.add(record);
+                }
+            }
+            uuidsByName.clear();
+            for (int record = 0; record < highWater; record++) {
+                if (buffer.get(offset(record) + R_FLAGS) == FLAG_USED) {
+                    indexName(record);
+                }
+            }
+
+            if (flusher == null) {
+                long interval = Math.max(1, manager.getConfig().storage.snapshotIntervalSeconds);
+                flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "savs-economy-mmap-flush");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                flusher.scheduleWithFixedDelay(this::force, interval, interval, TimeUnit.SECONDS);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open " + file, e);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes dirty pages to disk and stops the periodic flush, used on shutdown.
+     */
+    @Override
+    public void save() {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher = null;
+        }
+        force();
+    }
+
+    private void force() {
+        structureLock.readLock().lock();
+        try {
+            if (buffer != null) {
+                buffer.force();
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    // Must hold the write lock
+    private void map() throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+    }
+
+    // Must hold the write lock
+    private void writeHeader() {
+        buffer.putInt(H_CAPACITY, capacity);
+        buffer.putInt(H_HIGH_WATER, highWater);
+    }
+
+    private static int offset(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    private static int tableSizeFor(int records) {
+        // Power of two, at most half full
+        return Integer.highestOneBit(Math.max(16, records * 2 - 1)) << 1;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private Object lockFor(UUID uuid) {
+        return locks[stripe(uuid)];
+    }
+
+    private static int stripe(UUID uuid) {
+        return hash(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) & (LOCK_STRIPES - 1);
+    }
+
+    // Must hold the read or write lock. Returns the record slot or -1.
+    private int find(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int mask = index.length - 1;
+        for (int slot = hash(msb, lsb) & mask; ; slot = (slot + 1) & mask) {
+            int entry = index[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int base = offset(entry - 1);
+            if (buffer.getLong(base + R_MSB) == msb && buffer.getLong(base + R_LSB) == lsb) {
+                return entry - 1;
+            }
+        }
+    }
+
+    // Must hold the write lock
+    private void indexInsert(int record) {
+        int base = offset(record);
+        int mask = index.length - 1;
+        int slot = hash(buffer.getLong(base + R_MSB), buffer.getLong(base + R_LSB)) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = record + 1;
+    }
+
+    // Must hold the write lock. Backward-shift deletion keeps probe chains intact without tombstones.
+    private void indexRemove(UUID uuid) {
+        int mask = index.length - 1;
+        int slot = hash(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) & mask;
+        while (index[slot] != 0) {
+            int base = offset(index[slot] - 1);
+            if (buffer.getLong(base + R_MSB) == uuid.getMostSignificantBits() && buffer.getLong(base + R_LSB) == uuid.getLeastSignificantBits()) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (index[slot] == 0) return;
+
+        int hole = slot;
+        for (int next = (hole + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+            int base = offset(index[next] - 1);
+            int home = hash(buffer.getLong(base + R_MSB), buffer.getLong(base + R_LSB)) & mask;
+            // Move the entry back if its home slot isn't between the hole and where it sits
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                index[hole] = index[next];
+                hole = next;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    /**
+     * Creates the account's record if it doesn't exist. A concurrent delete may free it again
+     * before the caller locks it, so callers look it up again under the read lock.
+     */
+    private void ensureRecord(UUID uuid, String name) {
+        structureLock.readLock().lock();
+        try {
+            if (find(uuid) >= 0) return;
+        } finally {
+            structureLock.readLock().unlock();
+        }
+
+        structureLock.writeLock().lock();
+        try {
+            if (find(uuid) >= 0) return;
+            int record;
+            if (!freeRecords.isEmpty()) {
+                record = freeRecords.poll();
+            } else {
+                if (highWater == capacity) {
+                    grow();
+                }
+                record = highWater++;
+            }
+
+            int base = offset(record);
+            buffer.putLong(base + R_MSB, uuid.getMostSignificantBits());
+            buffer.putLong(base + R_LSB, uuid.getLeastSignificantBits());
+            buffer.putLong(base + R_BALANCE, Money.toUnits(manager.getConfig().defaultBalance));
+            buffer.putLong(base + R_VERSION, 0);
+            writeName(base, name);
+            buffer.put(base + R_FLAGS, FLAG_USED);
+            writeHeader();
+            indexInsert(record);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to grow " + file, e);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+
+    // Must hold the write lock
+    private void grow() throws IOException {
+        buffer.force();
+        capacity *= 2;
+        map();
+        writeHeader();
+
+        // Rehash into a table sized for the new capacity
+        int[] old = index;
+        index = new int[tableSizeFor(capacity)];
+        for (int entry : old) {
+            if (entry != 0) {
+                indexInsert(entry - 1);
+            }
+        }
+    }
+
+    private void writeName(int base, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_NAME_BYTES);
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--; // Don't cut a multi-byte character in half
+        }
+        buffer.put(base + R_NAME, bytes, 0, length);
+        buffer.put(base + R_NAME_LENGTH, (byte) length);
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    // Must hold the read or write lock. Claims the record's name unless an account that looks
+    // more recently used already holds it, like JsonStorage does on load.
+    private void indexName(int record) {
+        int base = offset(record);
+        UUID uuid = new UUID(buffer.getLong(base + R_MSB), buffer.getLong(base + R_LSB));
+        uuidsByName.merge(nameKey(readName(base)), uuid, this::preferredOwner);
+    }
+
+    // Must hold the read or write lock
+    private UUID preferredOwner(UUID a, UUID b) {
+        int first = find(a);
+        int second = find(b);
+        if (first < 0) return b;
+        if (second < 0) return a;
+        // Higher version means more balance changes, tie broken by UUID so every load agrees
+        int byVersion = Long.compare(buffer.getLong(offset(first) + R_VERSION), buffer.getLong(offset(second) + R_VERSION));
+        if (byVersion != 0) return byVersion > 0 ? a : b;
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    // The account no longer goes by this name; hand it to another account with the same name if there is one
+    private void releaseName(String name, UUID uuid) {
+        String key = nameKey(name);
+        if (!uuidsByName.remove(key, uuid)) return;
+        structureLock.readLock().lock();
+        try {
+            for (int record = 0; record < highWater; record++) {
+                int base = offset(record);
+                if (buffer.get(base + R_FLAGS) == FLAG_USED && nameKey(readName(base)).equals(key)) {
+                    indexName(record);
+                }
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    private String readName(int base) {
+        byte[] bytes = new byte[buffer.get(base + R_NAME_LENGTH) & 0xFF];
+        buffer.get(base + R_NAME, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Must hold the read lock and the record's stripe lock
+    private AccountData read(int record) {
+        int base = offset(record);
+        return new AccountData(readName(base), buffer.getLong(base + R_BALANCE), buffer.getLong(base + R_VERSION));
+    }
+
+    // Must hold the read lock and the record's stripe lock
+    private void writeBalance(int record, long units) {
+        int base = offset(record);
+        buffer.putLong(base + R_BALANCE, units);
+        buffer.putLong(base + R_VERSION, buffer.getLong(base + R_VERSION) + 1);
+    }
+
+    private long balanceUnits(int record) {
+        return buffer.getLong(offset(record) + R_BALANCE);
+    }
+
+    @Override
+    public long getBalance(UUID uuid) {
+        AccountData data = getAccount(uuid);
+        return data != null ? data.units : Money.toUnits(manager.getConfig().defaultBalance);
+    }
+
+    @Override
+    public void setBalance(UUID uuid, long units) {
+        structureLock.readLock().lock();
+        try {
+            synchronized (lockFor(uuid)) {
+                int record = find(uuid);
+                if (record >= 0) {
+                    writeBalance(record, units);
+                }
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean setBalance(UUID uuid, long units, long expectedVersion) {
+        structureLock.readLock().lock();
+        try {
+            synchronized (lockFor(uuid)) {
+                int record = find(uuid);
+                if (record < 0 || buffer.getLong(offset(record) + R_VERSION) != expectedVersion) {
+                    return false; // Optimistic lock failure
+                }
+                writeBalance(record, units);
+                return true;
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public TransferResult transfer(UUID from, UUID to, long units) {
+        // Take both stripes in index order so opposing transfers can't deadlock
+        int a = stripe(from);
+        int b = stripe(to);
+        structureLock.readLock().lock();
+        try {
+            synchronized (locks[Math.min(a, b)]) {
+                synchronized (locks[Math.max(a, b)]) {
+                    int source = find(from);
+                    int target = find(to);
+                    if (source < 0 || target < 0 || balanceUnits(source) < units) {
+                        return null; // Insufficient funds or missing account
+                    }
+                    long credited;
+                    try {
+                        credited = Math.addExact(balanceUnits(target), units);
+                    } catch (ArithmeticException e) {
+                        return null;
+                    }
+                    writeBalance(source, balanceUnits(source) - units);
+                    writeBalance(target, credited);
+                    return new TransferResult(read(source), read(target));
+                }
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public AccountData applyDelta(UUID uuid, long delta) {
+        structureLock.readLock().lock();
+        try {
+            synchronized (lockFor(uuid)) {
+                int record = find(uuid);
+                if (record < 0) return null; // Missing accounts are refused, not created
+                long updated;
+                try {
+                    updated = Math.addExact(balanceUnits(record), delta);
+                } catch (ArithmeticException e) {
+                    return null;
+                }
+                if (delta < 0 && updated < 0) {
+                    return null; // Insufficient funds
+                }
+                writeBalance(record, updated);
+                return read(record);
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<UUID, AccountData> applyDeltas(Map<UUID, Long> deltas) {
+        Map<UUID, AccountData> result = new HashMap<>();
+        structureLock.readLock().lock();
+        try {
+            for (Map.Entry<UUID, Long> entry : deltas.entrySet()) {
+                synchronized (lockFor(entry.getKey())) {
+                    int record = find(entry.getKey());
+                    if (record < 0) continue;
+                    long updated;
+                    try {
+                        updated = Math.addExact(balanceUnits(record), entry.getValue());
+                    } catch (ArithmeticException e) {
+                        // Refused on its own like applyDelta does, the rest of the batch still applies
+                        savage.commoneconomy.SavsCommonEconomy.LOGGER.warn("Refusing delta " + entry.getValue() + " for " + entry.getKey() + ", the balance would overflow");
+                        continue;
+                    }
+                    writeBalance(record, updated);
+                    result.put(entry.getKey(), read(record));
+                }
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean hasAccount(UUID uuid) {
+        structureLock.readLock().lock();
+        try {
+            return find(uuid) >= 0;
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public AccountData getAccount(UUID uuid) {
+        structureLock.readLock().lock();
+        try {
+            synchronized (lockFor(uuid)) {
+                int record = find(uuid);
+                return record >= 0 ? read(record) : null;
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void createAccount(UUID uuid, String name) {
+        ensureRecord(uuid, name);
+        String oldName = null;
+        structureLock.readLock().lock();
+        try {
+            synchronized (lockFor(uuid)) {
+                int record = find(uuid);
+                if (record < 0) return; // Deleted again in between
+                String stored = readName(offset(record));
+                // Update name if changed
+                if (!stored.equals(name)) {
+                    oldName = stored;
+                    writeName(offset(record), name);
+                }
+                // Whoever joins with a name last owns it, even if another account still has it stored
+                uuidsByName.put(nameKey(readName(offset(record))), uuid);
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        if (oldName != null && !nameKey(oldName).equals(nameKey(name))) {
+            releaseName(oldName, uuid);
+        }
+    }
+
+    @Override
+    public UUID getUUID(String name) {
+        return uuidsByName.get(nameKey(name));
+    }
+
+    @Override
+    public Collection<String> getOfflinePlayerNames() {
+        List<String> names = new ArrayList<>();
+        structureLock.readLock().lock();
+        try {
+            for (int record = 0; record < highWater; record++) {
+                int base = offset(record);
+                if (buffer.get(base + R_FLAGS) == FLAG_USED) {
+                    names.add(readName(base));
+                }
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        return names;
+    }
+
+    @Override
+    public List<AccountData> getTopAccounts(int limit) {
+        if (limit <= 0) return new ArrayList<>();
+
+        // Bounded min-heap over the raw balances, only the winners get decoded
+        PriorityQueue<long[]> top = new PriorityQueue<>(Comparator.comparingLong(entry -> entry[0]));
+        List<AccountData> result = new ArrayList<>();
+        structureLock.readLock().lock();
+        try {
+            for (int record = 0; record < highWater; record++) {
+                int base = offset(record);
+                if (buffer.get(base + R_FLAGS) != FLAG_USED) continue;
+                long balance = buffer.getLong(base + R_BALANCE);
+                if (top.size() < limit) {
+                    top.add(new long[]{balance, record});
+                } else if (balance > top.peek()[0]) {
+                    top.poll();
+                    top.add(new long[]{balance, record});
+                }
+            }
+            while (!top.isEmpty()) {
+                result.add(read((int) top.poll()[1]));
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    @Override
+    public void forEachAccount(java.util.function.BiConsumer<UUID, AccountData> consumer) {
+        structureLock.readLock().lock();
+        try {
+            for (int record = 0; record < highWater; record++) {
+                int base = offset(record);
+                if (buffer.get(base + R_FLAGS) == FLAG_USED) {
+                    consumer.accept(new UUID(buffer.getLong(base + R_MSB), buffer.getLong(base + R_LSB)), read(record));
+                }
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void logTransaction(long timestamp, String source, String target, BigDecimal amount, String type, String details) {
+        // Relies on TransactionLogger's file logging, like JsonStorage
+    }
+
+    @Override
+    public List<savage.commoneconomy.util.TransactionLogger.LogEntry> searchLogs(String target, long cutoffTimestamp) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void deleteAccount(UUID uuid) {
+        String name;
+        structureLock.writeLock().lock();
+        try {
+            int record = find(uuid);
+            if (record < 0) return;
+            name = readName(offset(record));
+            indexRemove(uuid);
+            buffer.put(offset(record) + R_FLAGS, (byte) 0);
+            freeRecords.add(record);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+        releaseName(name, uuid);
+    }
+}
@@ -32,6 +32,22 @@ public class MysqlStorage extends SqlStorage {
         // Already set up in constructor
     }
 
+    @Override
+    protected String upsertAccountSql() {
+        // MySQL skips the write (0 affected rows) when the name is unchanged; no RETURNING, so it's read back separately
+        return "INSERT INTO " + tablePrefix + "accounts (uuid, name, name_lower, balance, version) VALUES (?, ?, ?, ?, 0) " +
+                "ON DUPLICATE KEY UPDATE name = VALUES(name), name_lower = VALUES(name_lower)";
+    }
+
+    @Override
+    protected void swapTables(java.sql.Connection conn, String live, String replacement, String backup) throws java.sql.SQLException {
+        // DDL commits implicitly in MySQL, but a multi-table RENAME is atomic on its own
+        try (java.sql.PreparedStatement stmt = conn.prepareStatement(
+                "RENAME TABLE " + live + " TO " + backup + ", " + replacement + " TO " + live)) {
+            stmt.executeUpdate();
+        }
+    }
+
     @Override
     protected String getTransactionsTableCreationSql() {
         return "CREATE TABLE IF NOT EXISTS " + tablePrefix + "transactions (" +
@@ -32,6 +32,50 @@ public class PostgresStorage extends SqlStorage {
         // Already set up in constructor
     }
 
+    @Override
+    protected boolean supportsReturning() {
+        return true;
+    }
+
+    @Override
+    protected String upsertAccountSql() {
+        // DO UPDATE ... WHERE returns nothing when the name is unchanged, so fall back to the existing row
+        String table = tablePrefix + "accounts";
+        return "WITH upsert AS (" +
+                "INSERT INTO " + table + " AS a (uuid, name, name_lower, balance, version) VALUES (?, ?, ?, ?, 0) " +
+                "ON CONFLICT (uuid) DO UPDATE SET name = EXCLUDED.name, name_lower = EXCLUDED.name_lower WHERE a.name IS DISTINCT FROM EXCLUDED.name " +
+                "RETURNING name, balance, version) " +
+                "SELECT name, balance, version FROM upsert " +
+                "UNION ALL " +
+                "SELECT name, balance, version FROM " + table + " WHERE uuid = ? AND NOT EXISTS (SELECT 1 FROM upsert)";
+    }
+
+    @Override
+    protected boolean upsertReturnsRow() {
+        return true;
+    }
+
+    @Override
+    protected void bindUpsert(java.sql.PreparedStatement stmt, java.util.UUID uuid, String name) throws java.sql.SQLException {
+        super.bindUpsert(stmt, uuid, name);
+        setUuid(stmt, 5, uuid);
+    }
+
+    @Override
+    protected String uuidColumnType() {
+        return "UUID";
+    }
+
+    @Override
+    protected void setUuid(java.sql.PreparedStatement stmt, int index, java.util.UUID uuid) throws java.sql.SQLException {
+        stmt.setObject(index, uuid);
+    }
+
+    @Override
+    protected java.util.UUID getUuid(java.sql.ResultSet rs, String column) throws java.sql.SQLException {
+        return rs.getObject(column, java.util.UUID.class);
+    }
+
     @Override
     protected String getTransactionsTableCreationSql() {
         return "CREATE TABLE IF NOT EXISTS " + tablePrefix + "transactions (" +
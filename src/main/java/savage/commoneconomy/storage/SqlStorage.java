@@ -1,15 +1,24 @@
 package savage.commoneconomy.storage;
 
 import savage.commoneconomy.EconomyManager.AccountData;
+import savage.commoneconomy.EconomyManager.TransferResult;
+import savage.commoneconomy.util.Money;
 
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -22,42 +31,236 @@ public abstract class SqlStorage extends savage.savdbcore.storage.SqlStorage imp
     public SqlStorage(savage.commoneconomy.EconomyManager manager, String tablePrefix) {
         super(tablePrefix);
         this.manager = manager;
+        // The balance columns are DECIMAL(20, 2); any other scale would be rounded by the database
+        if (Money.getScale() != 2) {
+            throw new IllegalStateException("currencyScale is " + Money.getScale() + " but SQL storage only supports currencyScale 2");
+        }
     }
 
+    // Bump when the table layout changes and add a step to createTables
+    protected static final int SCHEMA_VERSION = 2;
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+
     protected void createTables() {
         try (Connection conn = getConnection()) {
-            // Create accounts table
             try (PreparedStatement stmt = conn.prepareStatement(
-                     "CREATE TABLE IF NOT EXISTS " + tablePrefix + "accounts (" +
-                             "uuid VARCHAR(36) PRIMARY KEY, " +
-                             "name VARCHAR(16) NOT NULL, " +
-                             "balance DECIMAL(20, 2) NOT NULL, " +
-                             "version BIGINT DEFAULT 0" +
-                             ")")) {
+                    "CREATE TABLE IF NOT EXISTS " + tablePrefix + "schema_version (version INT NOT NULL)")) {
                 stmt.executeUpdate();
             }
-            
-            // Migration: Add version column if it doesn't exist
-            try (PreparedStatement checkStmt = conn.prepareStatement("SELECT version FROM " + tablePrefix + "accounts LIMIT 1")) {
-                checkStmt.executeQuery();
-            } catch (SQLException e) {
-                // Column likely missing, try to add it
-                try (PreparedStatement alterStmt = conn.prepareStatement("ALTER TABLE " + tablePrefix + "accounts ADD COLUMN version BIGINT DEFAULT 0")) {
-                    alterStmt.executeUpdate();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
-                }
+
+            int version = readSchemaVersion(conn);
+            if (version == 0 && tableExists(conn, tablePrefix + "accounts")) {
+                version = 1; // Installs from before versioning have the original VARCHAR layout
+            }
+
+            if (version == 0) {
+                createAccountsTable(conn, tablePrefix + "accounts");
+            } else if (version == 1) {
+                migrateAccountsToV2(conn);
             }
 
             // Create transactions table
             try (PreparedStatement stmt = conn.prepareStatement(getTransactionsTableCreationSql())) {
                 stmt.executeUpdate();
             }
+            if (version < 2) {
+                createIndex(conn, "CREATE INDEX " + tablePrefix + "tx_time ON " + tablePrefix + "transactions (timestamp)");
+                createIndex(conn, "CREATE INDEX " + tablePrefix + "tx_source_time ON " + tablePrefix + "transactions (source, timestamp)");
+                createIndex(conn, "CREATE INDEX " + tablePrefix + "tx_target_time ON " + tablePrefix + "transactions (target, timestamp)");
+            }
+
+            if (version != SCHEMA_VERSION) {
+                writeSchemaVersion(conn, SCHEMA_VERSION);
+            }
         } catch (SQLException e) {
-            e.printStackTrace();
+            // Every query binds binary UUIDs, so running on a missing or half-migrated schema would lose balances
+            throw new IllegalStateException("Could not create or migrate the economy tables", e);
+        }
+    }
+
+    /**
+     * Column type for binary UUID keys, see {@link #setUuid}.
+     */
+    protected String uuidColumnType() {
+        return "BINARY(16)";
+    }
+
+    private void createAccountsTable(Connection conn, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "CREATE TABLE IF NOT EXISTS " + table + " (" +
+                        "uuid " + uuidColumnType() + " PRIMARY KEY, " +
+                        "name VARCHAR(16) NOT NULL, " +
+                        "name_lower VARCHAR(16) NOT NULL, " + // Indexed copy for case-insensitive lookups
+                        "balance DECIMAL(20, 2) NOT NULL, " +
+                        "version BIGINT DEFAULT 0" +
+                        ")")) {
+            stmt.executeUpdate();
+        }
+        createIndex(conn, "CREATE INDEX " + table + "_name_lower ON " + table + " (name_lower)");
+        createIndex(conn, "CREATE INDEX " + table + "_balance ON " + table + " (balance DESC)");
+    }
+
+    /**
+     * Copies the original VARCHAR-keyed table into the binary-keyed layout in small batches,
+     * so no single transaction holds the table for long, then swaps the tables.
+     * The old table is kept as {@code <prefix>accounts_legacy}.
+     */
+    private void migrateAccountsToV2(Connection conn) throws SQLException {
+        String live = tablePrefix + "accounts";
+        String copy = tablePrefix + "accounts_v2";
+
+        // Migration: Add version column if it doesn't exist
+        try (PreparedStatement checkStmt = conn.prepareStatement("SELECT version FROM " + live + " LIMIT 1")) {
+            checkStmt.executeQuery();
+        } catch (SQLException e) {
+            // Column likely missing, try to add it
+            try (PreparedStatement alterStmt = conn.prepareStatement("ALTER TABLE " + live + " ADD COLUMN version BIGINT DEFAULT 0")) {
+                alterStmt.executeUpdate();
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        savage.commoneconomy.SavsCommonEconomy.LOGGER.info("Migrating " + live + " to schema version 2");
+        // Start over if a previous run was interrupted, the source table is untouched until the swap
+        try (PreparedStatement stmt = conn.prepareStatement("DROP TABLE IF EXISTS " + copy)) {
+            stmt.executeUpdate();
+        }
+        createAccountsTable(conn, copy);
+
+        String after = "";
+        long copied = 0;
+        while (true) {
+            List<Object[]> rows = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT uuid, name, balance, version FROM " + live + " WHERE uuid > ? ORDER BY uuid LIMIT ?")) {
+                stmt.setString(1, after);
+                stmt.setInt(2, MIGRATION_BATCH_SIZE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new Object[]{rs.getString("uuid"), rs.getString("name"), rs.getBigDecimal("balance"), rs.getLong("version")});
+                    }
+                }
+            }
+            if (rows.isEmpty()) {
+                break;
+            }
+            after = (String) rows.get(rows.size() - 1)[0];
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO " + copy + " (uuid, name, name_lower, balance, version) VALUES (?, ?, ?, ?, ?)")) {
+                for (Object[] row : rows) {
+                    UUID uuid;
+                    try {
+                        uuid = UUID.fromString((String) row[0]);
+                    } catch (IllegalArgumentException e) {
+                        savage.commoneconomy.SavsCommonEconomy.LOGGER.warn("Skipping account with invalid UUID: " + row[0]);
+                        continue;
+                    }
+                    String name = (String) row[1];
+                    setUuid(stmt, 1, uuid);
+                    stmt.setString(2, name);
+                    stmt.setString(3, name.toLowerCase(Locale.ROOT));
+                    stmt.setBigDecimal(4, (BigDecimal) row[2]);
+                    stmt.setLong(5, (Long) row[3]);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            copied += rows.size();
+        }
+
+        swapTables(conn, live, copy, tablePrefix + "accounts_legacy");
+        savage.commoneconomy.SavsCommonEconomy.LOGGER.info("Migrated " + copied + " accounts, the old table was kept as " + tablePrefix + "accounts_legacy");
+    }
+
+    /**
+     * Atomically replaces {@code live} with {@code replacement}, keeping the old table as {@code backup}.
+     */
+    protected void swapTables(Connection conn, String live, String replacement, String backup) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement("ALTER TABLE " + live + " RENAME TO " + backup)) {
+                stmt.executeUpdate();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("ALTER TABLE " + replacement + " RENAME TO " + live)) {
+                stmt.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private void createIndex(Connection conn, String sql) {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            // Most likely already there from an interrupted upgrade
+            savage.commoneconomy.SavsCommonEconomy.LOGGER.warn("Could not create index (" + e.getMessage() + "): " + sql);
+        }
+    }
+
+    private boolean tableExists(Connection conn, String table) {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM " + table + " LIMIT 1")) {
+            stmt.executeQuery().close();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private int readSchemaVersion(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT MAX(version) FROM " + tablePrefix + "schema_version");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private void writeSchemaVersion(Connection conn, int version) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + tablePrefix + "schema_version")) {
+                stmt.executeUpdate();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO " + tablePrefix + "schema_version (version) VALUES (?)")) {
+                stmt.setInt(1, version);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
         }
     }
 
+    /**
+     * Binds a UUID key as 16 big-endian bytes, which sort the same as the string form.
+     */
+    protected void setUuid(PreparedStatement stmt, int index, UUID uuid) throws SQLException {
+        ByteBuffer bytes = ByteBuffer.allocate(16);
+        bytes.putLong(uuid.getMostSignificantBits());
+        bytes.putLong(uuid.getLeastSignificantBits());
+        stmt.setBytes(index, bytes.array());
+    }
+
+    protected UUID getUuid(ResultSet rs, String column) throws SQLException {
+        ByteBuffer bytes = ByteBuffer.wrap(rs.getBytes(column));
+        return new UUID(bytes.getLong(), bytes.getLong());
+    }
+
     protected abstract String getTransactionsTableCreationSql();
 
     @Override
@@ -72,28 +275,28 @@ public abstract class SqlStorage extends savage.savdbcore.storage.SqlStorage imp
     }
 
     @Override
-    public BigDecimal getBalance(UUID uuid) {
+    public long getBalance(UUID uuid) {
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement("SELECT balance FROM " + tablePrefix + "accounts WHERE uuid = ?")) {
-            stmt.setString(1, uuid.toString());
+            setUuid(stmt, 1, uuid);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getBigDecimal("balance");
+                    return Money.toUnits(rs.getBigDecimal("balance"));
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return BigDecimal.ZERO;
+        return 0;
     }
 
     @Override
-    public void setBalance(UUID uuid, BigDecimal amount) {
+    public void setBalance(UUID uuid, long units) {
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(
                      "UPDATE " + tablePrefix + "accounts SET balance = ?, version = version + 1 WHERE uuid = ?")) {
-            stmt.setBigDecimal(1, amount);
-            stmt.setString(2, uuid.toString());
+            stmt.setBigDecimal(1, Money.fromUnits(units));
+            setUuid(stmt, 2, uuid);
             stmt.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -101,12 +304,12 @@ public abstract class SqlStorage extends savage.savdbcore.storage.SqlStorage imp
     }
 
     @Override
-    public boolean setBalance(UUID uuid, BigDecimal amount, long expectedVersion) {
+    public boolean setBalance(UUID uuid, long units, long expectedVersion) {
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(
                      "UPDATE " + tablePrefix + "accounts SET balance = ?, version = version + 1 WHERE uuid = ? AND version = ?")) {
-            stmt.setBigDecimal(1, amount);
-            stmt.setString(2, uuid.toString());
+            stmt.setBigDecimal(1, Money.fromUnits(units));
+            setUuid(stmt, 2, uuid);
             stmt.setLong(3, expectedVersion);
             int rows = stmt.executeUpdate();
             return rows > 0;
@@ -117,24 +320,253 @@ public abstract class SqlStorage extends savage.savdbcore.storage.SqlStorage imp
     }
 
     @Override
-    public boolean hasAccount(UUID uuid) {
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM " + tablePrefix + "accounts WHERE uuid = ?")) {
-            stmt.setString(1, uuid.toString());
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next();
+    public TransferResult transfer(UUID from, UUID to, long units) {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Touch rows in a stable order so two opposing transfers can't deadlock
+                boolean ok;
+                if (from.toString().compareTo(to.toString()) < 0) {
+                    ok = adjustBalance(conn, from, -units, true) && adjustBalance(conn, to, units, false);
+                } else {
+                    ok = adjustBalance(conn, to, units, false) && adjustBalance(conn, from, -units, true);
+                }
+                if (!ok) {
+                    conn.rollback(); // Insufficient funds or missing account
+                    return null;
+                }
+
+                AccountData fromData = readAccount(conn, from);
+                AccountData toData = readAccount(conn, to);
+                conn.commit();
+                return new TransferResult(fromData, toData);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return false;
+        return null;
     }
 
     @Override
-    public AccountData getAccount(UUID uuid) {
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT name, balance, version FROM " + tablePrefix + "accounts WHERE uuid = ?")) {
-            stmt.setString(1, uuid.toString());
+    public AccountData applyDelta(UUID uuid, long delta) {
+        boolean requireFunds = delta < 0;
+        BigDecimal amount = Money.fromUnits(delta);
+        try (Connection conn = getConnection()) {
+            if (supportsReturning()) {
+                // One statement does the update and hands back the new row
+                try (PreparedStatement stmt = conn.prepareStatement(deltaUpdateSql(requireFunds) + " RETURNING name, balance, version")) {
+                    stmt.setBigDecimal(1, amount);
+                    setUuid(stmt, 2, uuid);
+                    if (requireFunds) {
+                        stmt.setBigDecimal(3, amount);
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            return new AccountData(
+                                    rs.getString("name"),
+                                    rs.getBigDecimal("balance"),
+                                    rs.getLong("version")
+                            );
+                        }
+                    }
+                }
+                return null;
+            }
+
+            // Re-read inside the same transaction so we see exactly the row we wrote
+            conn.setAutoCommit(false);
+            try {
+                if (!adjustBalance(conn, uuid, delta, requireFunds)) {
+                    conn.rollback();
+                    return null;
+                }
+                AccountData data = readAccount(conn, uuid);
+                conn.commit();
+                return data;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public Map<UUID, AccountData> applyDeltas(Map<UUID, Long> deltas) {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Same row order as transfer and applyBatch, ledger flushes hand us an unordered map
+                List<UUID> order = new ArrayList<>(deltas.keySet());
+                order.sort(Comparator.comparing(UUID::toString));
+                List<UUID> applied = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(deltaUpdateSql(false))) {
+                    for (UUID uuid : order) {
+                        stmt.setBigDecimal(1, Money.fromUnits(deltas.get(uuid)));
+                        setUuid(stmt, 2, uuid);
+                        stmt.addBatch();
+                    }
+                    int[] counts = stmt.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                            applied.add(order.get(i));
+                        } else {
+                            savage.commoneconomy.SavsCommonEconomy.LOGGER.warn("Delta for " + order.get(i) + " matched no account row");
+                        }
+                    }
+                }
+
+                // Only the rows we changed, so the caller sees unmatched deltas as missing accounts rather than flushed
+                Map<UUID, AccountData> result = readAccounts(conn, applied);
+                conn.commit();
+                return result;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public Map<UUID, AccountData> applyBatch(Map<UUID, Long> deltas, boolean atomic) {
+        // Same row order as transfer so concurrent batches can't deadlock each other
+        List<UUID> order = new ArrayList<>(deltas.keySet());
+        order.sort(Comparator.comparing(UUID::toString));
+
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Debits need enough funds, credits always apply as long as the account exists
+                List<UUID> applied = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE " + tablePrefix + "accounts SET balance = balance + ?, version = version + 1 " +
+                                "WHERE uuid = ? AND (? > 0 OR balance + ? >= 0)")) {
+                    for (UUID uuid : order) {
+                        BigDecimal amount = Money.fromUnits(deltas.get(uuid));
+                        stmt.setBigDecimal(1, amount);
+                        setUuid(stmt, 2, uuid);
+                        stmt.setBigDecimal(3, amount);
+                        stmt.setBigDecimal(4, amount);
+                        stmt.addBatch();
+                    }
+                    int[] counts = stmt.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                            applied.add(order.get(i));
+                        }
+                    }
+                }
+
+                if (atomic && applied.size() < order.size()) {
+                    conn.rollback();
+                    return null;
+                }
+                Map<UUID, AccountData> result = readAccounts(conn, applied);
+                conn.commit();
+                return result;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public Map<UUID, AccountData> getAccounts(Collection<UUID> uuids) {
+        if (uuids.isEmpty()) {
+            return new HashMap<>();
+        }
+        try (Connection conn = getConnection()) {
+            return readAccounts(conn, uuids);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new HashMap<>();
+    }
+
+    /**
+     * Reads several accounts on the given connection, in chunks to stay under bind parameter limits.
+     */
+    protected Map<UUID, AccountData> readAccounts(Connection conn, Collection<UUID> uuids) throws SQLException {
+        Map<UUID, AccountData> result = new HashMap<>();
+        List<UUID> remaining = new ArrayList<>(uuids);
+        for (int start = 0; start < remaining.size(); start += 500) {
+            List<UUID> chunk = remaining.subList(start, Math.min(start + 500, remaining.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT uuid, name, balance, version FROM " + tablePrefix + "accounts WHERE uuid IN (" + placeholders + ")")) {
+                int i = 1;
+                for (UUID uuid : chunk) {
+                    setUuid(stmt, i++, uuid);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        result.put(getUuid(rs, "uuid"), new AccountData(
+                                rs.getString("name"),
+                                rs.getBigDecimal("balance"),
+                                rs.getLong("version")
+                        ));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether the dialect supports {@code UPDATE ... RETURNING}, letting delta updates
+     * skip the follow-up SELECT.
+     */
+    protected boolean supportsReturning() {
+        return false;
+    }
+
+    private String deltaUpdateSql(boolean requireFunds) {
+        String sql = "UPDATE " + tablePrefix + "accounts SET balance = balance + ?, version = version + 1 WHERE uuid = ?";
+        if (requireFunds) {
+            sql += " AND balance + ? >= 0";
+        }
+        return sql;
+    }
+
+    /**
+     * Applies a relative balance change on the given connection.
+     * When {@code requireFunds} is set the update only matches if the balance stays non-negative.
+     */
+    protected boolean adjustBalance(Connection conn, UUID uuid, long delta, boolean requireFunds) throws SQLException {
+        BigDecimal amount = Money.fromUnits(delta);
+        try (PreparedStatement stmt = conn.prepareStatement(deltaUpdateSql(requireFunds))) {
+            stmt.setBigDecimal(1, amount);
+            setUuid(stmt, 2, uuid);
+            if (requireFunds) {
+                stmt.setBigDecimal(3, amount);
+            }
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    protected AccountData readAccount(Connection conn, UUID uuid) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT name, balance, version FROM " + tablePrefix + "accounts WHERE uuid = ?")) {
+            setUuid(stmt, 1, uuid);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return new AccountData(
@@ -144,6 +576,28 @@ public abstract class SqlStorage extends savage.savdbcore.storage.SqlStorage imp
                     );
                 }
             }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean hasAccount(UUID uuid) {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM " + tablePrefix + "accounts WHERE uuid = ?")) {
+            setUuid(stmt, 1, uuid);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    @Override
+    public AccountData getAccount(UUID uuid) {
+        try (Connection conn = getConnection()) {
+            return readAccount(conn, uuid);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -152,28 +606,97 @@ public abstract class SqlStorage extends savage.savdbcore.storage.SqlStorage imp
 
     @Override
     public void createAccount(UUID uuid, String name) {
-        if (hasAccount(uuid)) {
-            // Update name
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                         "UPDATE " + tablePrefix + "accounts SET name = ? WHERE uuid = ?")) {
-                stmt.setString(1, name);
-                stmt.setString(2, uuid.toString());
-                stmt.executeUpdate();
-            } catch (SQLException e) {
-                e.printStackTrace();
+        try (Connection conn = getConnection()) {
+            upsertAccount(conn, uuid, name);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public AccountData loadOrCreateAccount(UUID uuid, String name) {
+        try (Connection conn = getConnection()) {
+            if (upsertReturnsRow()) {
+                // One statement creates or renames the account and hands back the row
+                try (PreparedStatement stmt = conn.prepareStatement(upsertAccountSql())) {
+                    bindUpsert(stmt, uuid, name);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            return new AccountData(
+                                    rs.getString("name"),
+                                    rs.getBigDecimal("balance"),
+                                    rs.getLong("version")
+                            );
+                        }
+                    }
+                }
+                return readAccount(conn, uuid); // Row was created concurrently after our snapshot
             }
-        } else {
-            // Insert new
-            try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                         "INSERT INTO " + tablePrefix + "accounts (uuid, name, balance, version) VALUES (?, ?, ?, 0)")) {
-                stmt.setString(1, uuid.toString());
-                stmt.setString(2, name);
-                stmt.setBigDecimal(3, manager.getConfig().defaultBalance);
-                stmt.executeUpdate();
-            } catch (SQLException e) {
-                e.printStackTrace();
+            upsertAccount(conn, uuid, name);
+            return readAccount(conn, uuid);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Dialect-specific single-statement upsert taking (uuid, name, name_lower, default balance), see {@link #bindUpsert}.
+     * It should leave the row alone when the name hasn't changed.
+     *
+     * @return the statement, or null to fall back to a separate UPDATE and INSERT
+     */
+    protected String upsertAccountSql() {
+        return null;
+    }
+
+    /**
+     * Whether {@link #upsertAccountSql()} is a query returning the account's name, balance and version.
+     */
+    protected boolean upsertReturnsRow() {
+        return false;
+    }
+
+    protected void bindUpsert(PreparedStatement stmt, UUID uuid, String name) throws SQLException {
+        setUuid(stmt, 1, uuid);
+        stmt.setString(2, name);
+        stmt.setString(3, name.toLowerCase(Locale.ROOT));
+        stmt.setBigDecimal(4, manager.getConfig().defaultBalance);
+    }
+
+    /**
+     * Updates the account's name, or inserts it with the default balance if it doesn't exist yet.
+     */
+    protected void upsertAccount(Connection conn, UUID uuid, String name) throws SQLException {
+        String upsert = upsertAccountSql();
+        if (upsert != null) {
+            try (PreparedStatement stmt = conn.prepareStatement(upsert)) {
+                bindUpsert(stmt, uuid, name);
+                stmt.execute();
+            }
+            return;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE " + tablePrefix + "accounts SET name = ?, name_lower = ? WHERE uuid = ?")) {
+            stmt.setString(1, name);
+            stmt.setString(2, name.toLowerCase(Locale.ROOT));
+            setUuid(stmt, 3, uuid);
+            if (stmt.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO " + tablePrefix + "accounts (uuid, name, name_lower, balance, version) VALUES (?, ?, ?, ?, 0)")) {
+            setUuid(stmt, 1, uuid);
+            stmt.setString(2, name);
+            stmt.setString(3, name.toLowerCase(Locale.ROOT));
+            stmt.setBigDecimal(4, manager.getConfig().defaultBalance);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            // Another server may have created it in the meantime
+            if (readAccount(conn, uuid) == null) {
+                throw e;
             }
         }
     }
@@ -181,11 +704,11 @@ public abstract class SqlStorage extends savage.savdbcore.storage.SqlStorage imp
     @Override
     public UUID getUUID(String name) {
         try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT uuid FROM " + tablePrefix + "accounts WHERE LOWER(name) = LOWER(?)")) {
-            stmt.setString(1, name);
+             PreparedStatement stmt = conn.prepareStatement("SELECT uuid FROM " + tablePrefix + "accounts WHERE name_lower = ?")) {
+            stmt.setString(1, name.toLowerCase(Locale.ROOT));
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return UUID.fromString(rs.getString("uuid"));
+                    return getUuid(rs, "uuid");
                 }
             }
         } catch (SQLException e) {
@@ -226,27 +749,83 @@ public abstract class SqlStorage extends savage.savdbcore.storage.SqlStorage imp
         }
     }
 
+    @Override
+    public boolean logTransactions(List<savage.commoneconomy.util.TransactionLogger.LogEntry> entries) {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO " + tablePrefix + "transactions (timestamp, source, target, amount, type, details) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (savage.commoneconomy.util.TransactionLogger.LogEntry entry : entries) {
+                    stmt.setLong(1, entry.epochMillis());
+                    stmt.setString(2, entry.source);
+                    stmt.setString(3, entry.target);
+                    stmt.setBigDecimal(4, entry.amount);
+                    stmt.setString(5, entry.type);
+                    stmt.setString(6, entry.details);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
     @Override
     public List<savage.commoneconomy.util.TransactionLogger.LogEntry> searchLogs(String target, long cutoffTimestamp) {
-        List<savage.commoneconomy.util.TransactionLogger.LogEntry> logs = new ArrayList<>();
-        String sql = "SELECT timestamp, source, target, amount, type, details FROM " + tablePrefix + "transactions WHERE timestamp > ?";
-        if (!target.equals("*")) {
-            sql += " AND (LOWER(source) LIKE ? OR LOWER(target) LIKE ?)";
+        return searchLogs(target, cutoffTimestamp, null, 0, Integer.MAX_VALUE);
+    }
+
+    private static final String LOG_COLUMNS = "id, timestamp, source, target, amount, type, details";
+    private static final String LOG_ORDER = " ORDER BY timestamp DESC, id DESC";
+    private static final String LOG_KEYSET = " AND (timestamp < ? OR (timestamp = ? AND id < ?))";
+
+    @Override
+    public List<savage.commoneconomy.util.TransactionLogger.LogEntry> searchLogs(String target, long cutoffTimestamp,
+                                                                                 savage.commoneconomy.util.TransactionLogger.LogCursor after, int skip, int limit) {
+        String table = tablePrefix + "transactions";
+        String keyset = after != null ? LOG_KEYSET : "";
+        boolean everyone = target.equals("*");
+        String sql;
+        if (everyone) {
+            sql = "SELECT " + LOG_COLUMNS + " FROM " + table + " WHERE timestamp > ?" + keyset + LOG_ORDER + " LIMIT ? OFFSET ?";
+        } else {
+            // One index range scan per participant column; an OR across both can't use either index
+            sql = "SELECT * FROM (SELECT " + LOG_COLUMNS + " FROM " + table + " WHERE " + participantFilter("source", target) + " AND timestamp > ?" + keyset + LOG_ORDER + " LIMIT ?) s " +
+                    "UNION " +
+                    "SELECT * FROM (SELECT " + LOG_COLUMNS + " FROM " + table + " WHERE " + participantFilter("target", target) + " AND timestamp > ?" + keyset + LOG_ORDER + " LIMIT ?) t" +
+                    LOG_ORDER + " LIMIT ? OFFSET ?";
         }
-        sql += " ORDER BY timestamp DESC";
+        int branchLimit = (int) Math.min(Integer.MAX_VALUE, (long) skip + limit);
 
+        List<savage.commoneconomy.util.TransactionLogger.LogEntry> logs = new ArrayList<>();
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, cutoffTimestamp);
-            if (!target.equals("*")) {
-                String search = "%" + target.toLowerCase() + "%";
-                stmt.setString(2, search);
-                stmt.setString(3, search);
+            int i = 1;
+            if (everyone) {
+                i = bindLogRange(stmt, i, cutoffTimestamp, after);
+            } else {
+                for (int branch = 0; branch < 2; branch++) {
+                    stmt.setString(i++, participantParam(target));
+                    i = bindLogRange(stmt, i, cutoffTimestamp, after);
+                    stmt.setInt(i++, branchLimit);
+                }
             }
-            
+            stmt.setInt(i++, limit);
+            stmt.setInt(i, skip);
+
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     logs.add(new savage.commoneconomy.util.TransactionLogger.LogEntry(
+                            rs.getLong("id"),
                             java.time.LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(rs.getLong("timestamp")), java.time.ZoneId.systemDefault()),
                             rs.getString("type"),
                             rs.getString("source"),
@@ -262,6 +841,59 @@ public abstract class SqlStorage extends savage.savdbcore.storage.SqlStorage imp
         return logs;
     }
 
+    @Override
+    public int countLogs(String target, long cutoffTimestamp) {
+        String table = tablePrefix + "transactions";
+        boolean everyone = target.equals("*");
+        String sql = everyone
+                ? "SELECT COUNT(*) FROM " + table + " WHERE timestamp > ?"
+                : "SELECT COUNT(*) FROM (" +
+                        "SELECT id FROM " + table + " WHERE " + participantFilter("source", target) + " AND timestamp > ? " +
+                        "UNION " +
+                        "SELECT id FROM " + table + " WHERE " + participantFilter("target", target) + " AND timestamp > ?) c";
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (everyone) {
+                stmt.setLong(1, cutoffTimestamp);
+            } else {
+                stmt.setString(1, participantParam(target));
+                stmt.setLong(2, cutoffTimestamp);
+                stmt.setString(3, participantParam(target));
+                stmt.setLong(4, cutoffTimestamp);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+
+    private static int bindLogRange(PreparedStatement stmt, int i, long cutoffTimestamp,
+                                    savage.commoneconomy.util.TransactionLogger.LogCursor after) throws SQLException {
+        stmt.setLong(i++, cutoffTimestamp);
+        if (after != null) {
+            stmt.setLong(i++, after.timestamp);
+            stmt.setLong(i++, after.timestamp);
+            stmt.setLong(i++, after.id);
+        }
+        return i;
+    }
+
+    // "Name*" is a prefix search, anything else an exact match; both can use the (column, timestamp) index
+    private static String participantFilter(String column, String target) {
+        return target.endsWith("*") ? column + " LIKE ? ESCAPE '!'" : column + " = ?";
+    }
+
+    private static String participantParam(String target) {
+        if (!target.endsWith("*")) {
+            return target;
+        }
+        String prefix = target.substring(0, target.length() - 1);
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
     @Override
     public List<AccountData> getTopAccounts(int limit) {
         List<AccountData> accounts = new ArrayList<>();
@@ -284,12 +916,31 @@ public abstract class SqlStorage extends savage.savdbcore.storage.SqlStorage imp
         return accounts;
     }
 
+    @Override
+    public void forEachAccount(java.util.function.BiConsumer<UUID, AccountData> consumer) {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT uuid, name, balance, version FROM " + tablePrefix + "accounts")) {
+            stmt.setFetchSize(1000); // Stream instead of loading every row at once where the driver allows it
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(getUuid(rs, "uuid"), new AccountData(
+                            rs.getString("name"),
+                            rs.getBigDecimal("balance"),
+                            rs.getLong("version")
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     public void deleteAccount(UUID uuid) {
         String sql = "DELETE FROM " + tablePrefix + "accounts WHERE uuid = ?";
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, uuid.toString());
+            setUuid(stmt, 1, uuid);
             stmt.executeUpdate();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -35,6 +35,17 @@ public class SqliteStorage extends SqlStorage {
         // Already set up in constructor
     }
 
+    @Override
+    protected String upsertAccountSql() {
+        return "INSERT INTO " + tablePrefix + "accounts (uuid, name, name_lower, balance, version) VALUES (?, ?, ?, ?, 0) " +
+                "ON CONFLICT(uuid) DO UPDATE SET name = excluded.name, name_lower = excluded.name_lower WHERE name <> excluded.name";
+    }
+
+    @Override
+    protected String uuidColumnType() {
+        return "BLOB";
+    }
+
     @Override
     protected String getTransactionsTableCreationSql() {
         return "CREATE TABLE IF NOT EXISTS " + tablePrefix + "transactions (" +
@@ -0,0 +1,381 @@
+package savage.commoneconomy.storage;
+
+import savage.commoneconomy.EconomyManager.AccountData;
+import savage.commoneconomy.EconomyManager.TransferResult;
+import savage.commoneconomy.SavsCommonEconomy;
+import savage.commoneconomy.config.EconomyConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Write-behind balance ledger for online players.
+ * Tracked accounts are changed in memory and pushed to storage as coalesced deltas,
+ * either on a timer or once enough accounts are dirty. Untracked accounts go straight to storage.
+ *
+ * Flushes add deltas rather than overwrite balances, so changes made by other servers
+ * in the meantime are never lost.
+ */
+public class WriteBehindLedger {
+    private final EconomyStorage storage;
+    private final EconomyConfig.WriteBehindConfig config;
+    private final ObjLongConsumer<UUID> onFlushed;
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService flusher;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedAccounts = new AtomicLong();
+
+    private static class Entry {
+        AccountData base;   // Last state known to be in storage
+        long inFlight;      // Delta currently being written
+        long pending;       // Delta not yet written
+        boolean releasing;  // Player left, drop once fully flushed
+        boolean removed;    // No longer in the map, callers must use storage
+
+        Entry(AccountData base) {
+            this.base = base;
+        }
+
+        long balance() {
+            return base.units + inFlight + pending; // applyDelta refuses anything that would overflow
+        }
+
+        AccountData view() {
+            return new AccountData(base.name, balance(), base.version);
+        }
+    }
+
+    /**
+     * @param onFlushed called with each account's stored balance after it was written, e.g. to publish to Redis
+     */
+    public WriteBehindLedger(EconomyStorage storage, EconomyConfig.WriteBehindConfig config, ObjLongConsumer<UUID> onFlushed) {
+        this.storage = storage;
+        this.config = config;
+        this.onFlushed = onFlushed;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "savs-economy-ledger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, config.flushIntervalMs, config.flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Loads the account into memory. Must not be called on the server thread.
+     */
+    public void track(UUID uuid) {
+        Entry existing = entries.get(uuid);
+        if (existing != null) {
+            synchronized (existing) {
+                existing.releasing = false;
+            }
+            return;
+        }
+        AccountData data = storage.getAccount(uuid);
+        if (data != null) {
+            entries.putIfAbsent(uuid, new Entry(data));
+        }
+    }
+
+    /**
+     * Starts tracking an account the caller has just read from storage.
+     */
+    public void track(UUID uuid, AccountData data) {
+        Entry existing = entries.putIfAbsent(uuid, new Entry(data));
+        if (existing != null) {
+            synchronized (existing) {
+                existing.releasing = false;
+            }
+        }
+    }
+
+    /**
+     * Flushes the account and drops it from memory. Must not be called on the server thread.
+     */
+    public void release(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) return;
+        synchronized (entry) {
+            entry.releasing = true;
+        }
+        writeBatch(List.of(uuid));
+    }
+
+    public boolean isTracked(UUID uuid) {
+        return entries.containsKey(uuid);
+    }
+
+    /**
+     * @return the in-memory view of the account, or null if it isn't tracked
+     */
+    public AccountData getAccount(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) return null;
+        synchronized (entry) {
+            return entry.removed ? null : entry.view();
+        }
+    }
+
+    /**
+     * Same contract as {@link EconomyStorage#applyDelta}.
+     */
+    public AccountData applyDelta(UUID uuid, long delta) {
+        Entry entry = entries.get(uuid);
+        if (entry != null) {
+            synchronized (entry) {
+                if (!entry.removed) {
+                    long updated;
+                    try {
+                        updated = Math.addExact(entry.balance(), delta);
+                    } catch (ArithmeticException e) {
+                        return null;
+                    }
+                    if (delta < 0 && updated < 0) {
+                        return null; // Insufficient funds
+                    }
+                    entry.pending += delta;
+                    markDirty(uuid);
+                    return entry.view();
+                }
+            }
+        }
+        return storage.applyDelta(uuid, delta);
+    }
+
+    /**
+     * Same contract as {@link EconomyStorage#setBalance(UUID, long)}, applied as a delta
+     * against the tracked balance so concurrent flushes stay consistent.
+     *
+     * @return false if the account isn't tracked and the caller should write through
+     */
+    public boolean setBalance(UUID uuid, long units) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) return false;
+        synchronized (entry) {
+            if (entry.removed) return false;
+            entry.pending += units - entry.balance();
+            markDirty(uuid);
+            return true;
+        }
+    }
+
+    /**
+     * Moves money as a debit followed by a credit. When either side is tracked the two legs
+     * may reach storage in different flushes.
+     */
+    public TransferResult transfer(UUID from, UUID to, long units) {
+        if (!entries.containsKey(from) && !entries.containsKey(to)) {
+            return storage.transfer(from, to, units);
+        }
+
+        AccountData debited = applyDelta(from, -units);
+        if (debited == null) {
+            return null;
+        }
+        AccountData credited = applyDelta(to, units);
+        if (credited == null) {
+            if (!adjust(from, units)) { // Target missing or full, refund
+                SavsCommonEconomy.LOGGER.error("Could not refund a failed transfer of " + units + " to " + from);
+            }
+            return null;
+        }
+        return new TransferResult(debited, credited);
+    }
+
+    /**
+     * Same contract as {@link EconomyStorage#applyBatch}. Batches touching only untracked
+     * accounts go to storage as one write; otherwise each delta is applied here and the
+     * applied ones are undone if an atomic batch is refused.
+     */
+    public Map<UUID, AccountData> applyBatch(Map<UUID, Long> deltas, boolean atomic) {
+        boolean anyTracked = false;
+        for (UUID uuid : deltas.keySet()) {
+            if (entries.containsKey(uuid)) {
+                anyTracked = true;
+                break;
+            }
+        }
+        if (!anyTracked) {
+            return storage.applyBatch(deltas, atomic);
+        }
+
+        Map<UUID, AccountData> result = new LinkedHashMap<>();
+        for (Map.Entry<UUID, Long> entry : deltas.entrySet()) {
+            AccountData data = applyDelta(entry.getKey(), entry.getValue());
+            if (data != null) {
+                result.put(entry.getKey(), data);
+            } else if (atomic) {
+                for (UUID applied : result.keySet()) {
+                    if (!adjust(applied, -deltas.get(applied))) {
+                        SavsCommonEconomy.LOGGER.error("Could not undo a refused balance batch for " + applied + ", kept " + deltas.get(applied));
+                    }
+                }
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds {@code delta} without the funds check, to undo a change that was already applied.
+     *
+     * @return false if the account is gone
+     */
+    private boolean adjust(UUID uuid, long delta) {
+        Entry entry = entries.get(uuid);
+        if (entry != null) {
+            synchronized (entry) {
+                if (!entry.removed) {
+                    entry.pending += delta;
+                    markDirty(uuid);
+                    return true;
+                }
+            }
+        }
+        Map<UUID, AccountData> result = storage.applyDeltas(Map.of(uuid, delta));
+        return result != null && result.containsKey(uuid);
+    }
+
+    /**
+     * Re-reads a tracked account after another server changed it, keeping our unflushed changes on top.
+     */
+    public void refresh(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) return;
+        AccountData fresh = storage.getAccount(uuid);
+        synchronized (entry) {
+            // While a write is in flight the flush result will refresh the base for us
+            if (fresh != null && entry.inFlight == 0 && fresh.version > entry.base.version) {
+                entry.base = fresh;
+            }
+        }
+    }
+
+    private void markDirty(UUID uuid) {
+        dirty.add(uuid);
+        if (dirty.size() >= config.maxDirtyAccounts) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            SavsCommonEconomy.LOGGER.error("Failed to flush economy ledger", e);
+        }
+    }
+
+    /**
+     * Writes every dirty account to storage in one batch.
+     */
+    public void flush() {
+        List<UUID> batch = new ArrayList<>();
+        for (Iterator<UUID> it = dirty.iterator(); it.hasNext(); ) {
+            batch.add(it.next());
+            it.remove();
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    private synchronized void writeBatch(List<UUID> uuids) {
+        Map<UUID, Long> deltas = new HashMap<>();
+        Map<UUID, Entry> written = new HashMap<>();
+        for (UUID uuid : uuids) {
+            Entry entry = entries.get(uuid);
+            if (entry == null) continue;
+            synchronized (entry) {
+                if (entry.pending != 0) {
+                    entry.inFlight = entry.pending;
+                    entry.pending = 0;
+                    deltas.put(uuid, entry.inFlight);
+                }
+                written.put(uuid, entry);
+            }
+        }
+
+        Map<UUID, AccountData> stored = deltas.isEmpty() ? Map.of() : storage.applyDeltas(deltas);
+        if (stored == null) {
+            SavsCommonEconomy.LOGGER.warn("Economy ledger flush failed, will retry " + deltas.size() + " accounts");
+        } else if (!deltas.isEmpty()) {
+            flushes.incrementAndGet();
+            flushedAccounts.addAndGet(deltas.size());
+        }
+
+        for (Map.Entry<UUID, Entry> e : written.entrySet()) {
+            UUID uuid = e.getKey();
+            Entry entry = e.getValue();
+            AccountData state = stored != null ? stored.get(uuid) : null;
+            synchronized (entry) {
+                if (stored == null) {
+                    // Keep the delta and try again on the next flush
+                    entry.pending += entry.inFlight;
+                    entry.inFlight = 0;
+                    dirty.add(uuid);
+                    continue;
+                }
+                if (state != null) {
+                    entry.base = state;
+                } else if (deltas.containsKey(uuid)) {
+                    SavsCommonEconomy.LOGGER.warn("Dropping ledger delta refused by storage (missing account or overflow) for " + uuid + ": " + entry.inFlight);
+                }
+                entry.inFlight = 0;
+                if (entry.releasing && entry.pending == 0) {
+                    entry.removed = true;
+                    entries.remove(uuid);
+                }
+            }
+            if (state != null && onFlushed != null) {
+                onFlushed.accept(uuid, state.units);
+            }
+        }
+    }
+
+    public int getTrackedCount() {
+        return entries.size();
+    }
+
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    public long getFlushedAccountCount() {
+        return flushedAccounts.get();
+    }
+
+    /**
+     * Stops the background flusher and writes everything still pending.
+     */
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (!dirty.isEmpty()) {
+            SavsCommonEconomy.LOGGER.error("Economy ledger could not flush " + dirty.size() + " accounts on shutdown");
+        }
+    }
+}
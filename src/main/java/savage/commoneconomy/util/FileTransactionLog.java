@@ -0,0 +1,710 @@
+package savage.commoneconomy.util;
+
+import savage.commoneconomy.SavsCommonEconomy;
+import savage.commoneconomy.config.EconomyConfig;
+import savage.commoneconomy.util.TransactionLogger.LogEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Transaction log file for non-SQL storage, split into daily segments that also roll over at a
+ * size limit (economy-yyyy-MM-dd-N.log). Every segment has a sparse index (.idx) of
+ * [newest timestamp before offset][offset] pairs, so a search skips segments from before the
+ * cutoff day and seeks straight to the cutoff inside the rest.
+ *
+ * Every segment also has postings from participant name to line offsets, so a search for one
+ * player reads only that player's lines. Postings missing after a crash or from older versions
+ * are rebuilt from the segment itself.
+ *
+ * The current segment stays open. Entries are encoded into a reused direct buffer without
+ * String.format, and without allocating for entries with ASCII names, then written with one
+ * channel write per buffer-full; {@code transactionLog.fsync} decides how often that is forced to disk.
+ */
+public class FileTransactionLog {
+    private static final String PREFIX = "economy-";
+    private static final String SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    // Postings: [participant hash][line offset] packed into one long per participant per entry,
+    // appended unsorted while the segment is open and sorted once it is sealed
+    private static final String POSTINGS_SUFFIX = ".post";
+    private static final String OPEN_POSTINGS_SUFFIX = ".plog";
+    // One index entry per this many bytes of log
+    private static final long INDEX_INTERVAL = 64 * 1024;
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final Path dir;
+    private final Path legacyFile;
+    private final ZoneRules zoneRules = ZoneId.systemDefault().getRules();
+    private final long maxSegmentBytes;
+    private final EconomyConfig.FsyncPolicy fsync;
+    private final long fsyncIntervalNanos;
+
+    // Reused for every append, entries are encoded straight into it
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+    private final ByteBuffer indexBuffer = ByteBuffer.allocateDirect(4 * 1024);
+    private final ByteBuffer postingsBuffer = ByteBuffer.allocateDirect(16 * 1024);
+
+    // Segment currently appended to, opened lazily on the first append
+    private volatile Segment current;
+    private FileChannel channel;
+    private FileChannel indexChannel;
+    private FileChannel postingsChannel;
+    private long size;
+    private long lastIndexed;
+    private long newestTimestamp;
+    private boolean unsynced;
+    private long lastSync = System.nanoTime();
+
+    private static class Segment {
+        final LocalDate day;
+        final int number;
+        final Path path;
+
+        Segment(LocalDate day, int number, Path path) {
+            this.day = day;
+            this.number = number;
+            this.path = path;
+        }
+
+        Path indexPath() {
+            return sibling(INDEX_SUFFIX);
+        }
+
+        Path postingsPath() {
+            return sibling(POSTINGS_SUFFIX);
+        }
+
+        Path openPostingsPath() {
+            return sibling(OPEN_POSTINGS_SUFFIX);
+        }
+
+        private Path sibling(String suffix) {
+            String name = path.getFileName().toString();
+            return path.resolveSibling(name.substring(0, name.length() - SUFFIX.length()) + suffix);
+        }
+    }
+
+    /**
+     * @param legacyFile single-file log written by older versions, still searched but never appended to
+     */
+    public FileTransactionLog(Path dir, Path legacyFile, long maxSegmentBytes, EconomyConfig.FsyncPolicy fsync, long fsyncIntervalMs) {
+        this.dir = dir;
+        this.legacyFile = legacyFile;
+        this.maxSegmentBytes = Math.max(INDEX_INTERVAL, Math.min(Integer.MAX_VALUE, maxSegmentBytes)); // Offsets are packed into 32 bits
+        this.fsync = fsync;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, fsyncIntervalMs));
+    }
+
+    /**
+     * Appends entries in order, starting a new segment when the day changes or the current one is full.
+     * Everything is handed to the OS before this returns; whether it is fsynced depends on the policy.
+     */
+    public synchronized void append(List<LogEntry> entries) throws IOException {
+        for (LogEntry entry : entries) {
+            LocalDate day = entry.timestamp.toLocalDate();
+            if (current == null || !day.equals(current.day) || size + buffer.position() >= maxSegmentBytes) {
+                roll(day);
+            }
+
+            long offset = size + buffer.position();
+            if (offset == 0 || offset - lastIndexed >= INDEX_INTERVAL) {
+                // Everything before offset is at most newestTimestamp, so a search for anything newer can start here
+                if (indexBuffer.remaining() < 16) {
+                    flush();
+                }
+                indexBuffer.putLong(newestTimestamp).putLong(offset);
+                lastIndexed = offset;
+            }
+
+            if (postingsBuffer.remaining() < 16) {
+                flush();
+            }
+            int hash = participantHash(entry.source);
+            postingsBuffer.putLong(posting(hash, offset));
+            if (participantHash(entry.target) != hash) {
+                postingsBuffer.putLong(posting(participantHash(entry.target), offset));
+            }
+
+            int worstCase = maxEncodedLength(entry);
+            if (buffer.remaining() < worstCase) {
+                flush();
+            }
+            if (buffer.remaining() >= worstCase) {
+                encode(entry);
+            } else {
+                // Longer than the whole buffer, only happens with absurd details text
+                writeFully(channel, ByteBuffer.wrap((TransactionLogger.formatLogEntry(entry) + "\n").getBytes(StandardCharsets.UTF_8)));
+                size = channel.size();
+            }
+            newestTimestamp = Math.max(newestTimestamp, epochMillis(entry.timestamp));
+        }
+        flush();
+
+        if (fsync == EconomyConfig.FsyncPolicy.BATCH) {
+            force();
+        } else if (fsync == EconomyConfig.FsyncPolicy.INTERVAL) {
+            syncIfDue();
+        }
+    }
+
+    /**
+     * Fsyncs if the interval policy is in use and the last sync is older than the interval.
+     * The log writer calls this while idle, so the last batch before a pause isn't left unsynced.
+     */
+    public synchronized void syncIfDue() throws IOException {
+        if (fsync == EconomyConfig.FsyncPolicy.INTERVAL && unsynced && System.nanoTime() - lastSync >= fsyncIntervalNanos) {
+            force();
+        }
+    }
+
+    /**
+     * Writes out and closes the current segment. The next append opens a new one.
+     */
+    public synchronized void close() throws IOException {
+        if (current == null) return;
+        flush();
+        if (fsync != EconomyConfig.FsyncPolicy.NONE) {
+            force();
+        }
+        channel.close();
+        indexChannel.close();
+        postingsChannel.close();
+        Segment sealed = current;
+        current = null;
+        try {
+            sealPostings(sealed);
+        } catch (IOException e) {
+            // The unsorted postings stay behind and are sealed by the next search
+            SavsCommonEconomy.LOGGER.warn("Failed to seal economy log postings for " + sealed.path.getFileName(), e);
+        }
+    }
+
+    // Log bytes go out before the index entries and postings pointing at them
+    private void flush() throws IOException {
+        buffer.flip();
+        size += writeFully(channel, buffer);
+        buffer.clear();
+        indexBuffer.flip();
+        writeFully(indexChannel, indexBuffer);
+        indexBuffer.clear();
+        postingsBuffer.flip();
+        writeFully(postingsChannel, postingsBuffer);
+        postingsBuffer.clear();
+        unsynced = true;
+    }
+
+    private void force() throws IOException {
+        if (current == null || !unsynced) return;
+        channel.force(false);
+        indexChannel.force(false);
+        postingsChannel.force(false);
+        unsynced = false;
+        lastSync = System.nanoTime();
+    }
+
+    private static int writeFully(FileChannel target, ByteBuffer source) throws IOException {
+        int written = 0;
+        while (source.hasRemaining()) {
+            written += target.write(source);
+        }
+        return written;
+    }
+
+    // Always starts a fresh segment, so we never have to recover the index state of an old one
+    private void roll(LocalDate day) throws IOException {
+        int number = 1;
+        if (current != null && current.day.equals(day)) {
+            number = current.number + 1;
+        } else {
+            for (Segment existing : listSegments()) {
+                if (existing.day.equals(day)) {
+                    number = Math.max(number, existing.number + 1);
+                }
+            }
+        }
+        close();
+
+        Files.createDirectories(dir);
+        Segment next = new Segment(day, number, dir.resolve(PREFIX + day + "-" + number + SUFFIX));
+        channel = FileChannel.open(next.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        indexChannel = FileChannel.open(next.indexPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        postingsChannel = FileChannel.open(next.openPostingsPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        current = next;
+        size = channel.size();
+        lastIndexed = 0;
+        newestTimestamp = Long.MIN_VALUE;
+    }
+
+    private static int maxEncodedLength(LogEntry entry) {
+        // Three UTF-8 bytes per char at most (a surrogate pair is two chars for four bytes)
+        int chars = length(entry.type) + length(entry.source) + length(entry.target) + length(entry.details);
+        return 64 + 3 * chars + entry.amount.precision() + Math.abs(entry.amount.scale());
+    }
+
+    private static int length(String text) {
+        return text != null ? text.length() : 4;
+    }
+
+    // Same bytes as TransactionLogger.formatLogEntry plus a newline, written straight into the buffer
+    private void encode(LogEntry entry) {
+        LocalDateTime time = entry.timestamp;
+        buffer.put((byte) '[');
+        putDigits(time.getYear(), 4);
+        buffer.put((byte) '-');
+        putDigits(time.getMonthValue(), 2);
+        buffer.put((byte) '-');
+        putDigits(time.getDayOfMonth(), 2);
+        buffer.put((byte) ' ');
+        putDigits(time.getHour(), 2);
+        buffer.put((byte) ':');
+        putDigits(time.getMinute(), 2);
+        buffer.put((byte) ':');
+        putDigits(time.getSecond(), 2);
+        putAscii("] [");
+        putString(entry.type);
+        putAscii("] ");
+        putString(entry.source);
+        putAscii(" -> ");
+        putString(entry.target);
+        putAscii(": $");
+        putAmount(entry);
+        putAscii(" (");
+        putString(entry.details);
+        buffer.put((byte) ')');
+        buffer.put((byte) '\n');
+    }
+
+    private void putDigits(int value, int width) {
+        if (value < 0 || value >= POWERS_OF_TEN[width]) {
+            putAscii(Integer.toString(value)); // Only years outside 0..9999
+            return;
+        }
+        for (int i = width - 1; i >= 0; i--) {
+            buffer.put((byte) ('0' + value / POWERS_OF_TEN[i] % 10));
+        }
+    }
+
+    private void putAmount(LogEntry entry) {
+        BigDecimal amount = entry.amount;
+        int scale = amount.scale();
+        if (scale < 0 || scale > 18 || amount.precision() > 18) {
+            putAscii(amount.toPlainString());
+            return;
+        }
+        long unscaled = entry.unscaledAmount;
+        if (unscaled < 0) {
+            buffer.put((byte) '-');
+            unscaled = -unscaled;
+        }
+        putLong(unscaled / POWERS_OF_TEN[scale]);
+        if (scale > 0) {
+            buffer.put((byte) '.');
+            long fraction = unscaled % POWERS_OF_TEN[scale];
+            for (int i = scale - 1; i >= 0; i--) {
+                buffer.put((byte) ('0' + fraction / POWERS_OF_TEN[i] % 10));
+            }
+        }
+    }
+
+    private void putLong(long value) {
+        int digits = 1;
+        while (digits < 19 && value >= POWERS_OF_TEN[digits]) {
+            digits++;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer.put((byte) ('0' + value / POWERS_OF_TEN[i] % 10));
+        }
+    }
+
+    private void putAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private void putString(String text) {
+        if (text == null) {
+            putAscii("null");
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?'); // Unpaired, same as String.getBytes
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * @param participant name to look up in the postings, or null to read every line in the window
+     * @return entries newer than the cutoff that match the filter, oldest first
+     */
+    public List<LogEntry> search(LocalDateTime cutoff, String participant, Predicate<LogEntry> filter) {
+        List<LogEntry> results = new ArrayList<>();
+        long cutoffMillis = cutoff.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        // Timestamps sort as text, so lines at or before the cutoff are skipped without parsing them
+        String cutoffText = cutoff.format(TransactionLogger.DATE_FORMAT);
+
+        try {
+            if (Files.exists(legacyFile) && Files.getLastModifiedTime(legacyFile).toMillis() > cutoffMillis) {
+                scan(legacyFile, 0, cutoffText, filter, results);
+            }
+        } catch (IOException e) {
+            SavsCommonEconomy.LOGGER.error("Failed to read economy log " + legacyFile, e);
+        }
+
+        LocalDate cutoffDay = cutoff.toLocalDate();
+        for (Segment segment : listSegments()) {
+            if (segment.day.isBefore(cutoffDay)) continue;
+            try {
+                long start = seekOffset(segment, cutoffMillis);
+                long[] postings = participant != null ? lookupPostings(segment, participantHash(participant), start) : null;
+                if (postings != null) {
+                    readLines(segment.path, postings, cutoffText, filter, results);
+                } else {
+                    scan(segment.path, start, cutoffText, filter, results);
+                }
+            } catch (IOException e) {
+                SavsCommonEconomy.LOGGER.error("Failed to read economy log " + segment.path, e);
+            }
+        }
+        return results;
+    }
+
+    // Binary searches the index for the last entry with nothing newer than the cutoff before it
+    private long seekOffset(Segment segment, long cutoffMillis) throws IOException {
+        Path indexPath = segment.indexPath();
+        if (!Files.exists(indexPath)) return 0;
+        ByteBuffer index;
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            int count = (int) (channel.size() / 16); // Ignore a half-written tail
+            index = ByteBuffer.allocate(count * 16);
+            while (index.hasRemaining() && channel.read(index) >= 0) {
+            }
+        }
+
+        int low = 0;
+        int high = index.capacity() / 16 - 1;
+        long offset = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (index.getLong(mid * 16) <= cutoffMillis) {
+                offset = index.getLong(mid * 16 + 8);
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return offset;
+    }
+
+    // Same value as name.toLowerCase(Locale.ROOT).hashCode(), which the postings on disk use, without the copy for ASCII names
+    private static int participantHash(String name) {
+        if (name == null) return 0;
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80) {
+                return name.toLowerCase(Locale.ROOT).hashCode(); // Case mapping beyond ASCII can change the length
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            hash = 31 * hash + c;
+        }
+        return hash;
+    }
+
+    // Same as LogEntry.epochMillis without the ZonedDateTime and Instant it allocates
+    private long epochMillis(LocalDateTime time) {
+        return time.toEpochSecond(zoneRules.getOffset(time)) * 1000 + time.getNano() / 1_000_000;
+    }
+
+    private static long posting(int hash, long offset) {
+        return (long) hash << 32 | offset;
+    }
+
+    /**
+     * @return offsets from start on of lines that may involve the participant (hashes can collide), or null
+     *         if the segment has no usable postings
+     */
+    private long[] lookupPostings(Segment segment, int hash, long start) {
+        try {
+            Path open = segment.openPostingsPath();
+            if (Files.exists(open)) {
+                Segment writing = current;
+                if (writing != null && writing.path.equals(segment.path)) {
+                    return scanOpenPostings(open, hash, start);
+                }
+                // Left over from a crash; lines are written before their postings, so the tail may have none
+                rebuildPostings(segment);
+                Files.deleteIfExists(open);
+            } else if (!Files.exists(segment.postingsPath())) {
+                rebuildPostings(segment);
+            }
+            return lookupSealedPostings(segment.postingsPath(), hash, start);
+        } catch (IOException e) {
+            SavsCommonEconomy.LOGGER.warn("Economy log postings for " + segment.path.getFileName() + " unusable, scanning instead", e);
+            return null;
+        }
+    }
+
+    private static long[] scanOpenPostings(Path path, int hash, long start) throws IOException {
+        long[] all = readPostings(path);
+        long[] offsets = new long[all.length];
+        int count = 0;
+        for (long posting : all) {
+            long offset = posting & 0xFFFFFFFFL;
+            if ((int) (posting >> 32) == hash && offset >= start) {
+                offsets[count++] = offset;
+            }
+        }
+        return Arrays.copyOf(offsets, count); // Appended in offset order already
+    }
+
+    private static long[] lookupSealedPostings(Path path, int hash, long start) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long count = in.size() / 8;
+            ByteBuffer one = ByteBuffer.allocate(8);
+
+            // First posting at or after [hash][start]
+            long key = posting(hash, start);
+            long low = 0;
+            long high = count;
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                one.clear();
+                readFully(in, one, mid * 8);
+                if (one.getLong(0) < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            long[] offsets = new long[16];
+            int found = 0;
+            ByteBuffer chunk = ByteBuffer.allocate(8 * 1024);
+            for (long position = low * 8; position < count * 8; ) {
+                chunk.clear();
+                chunk.limit((int) Math.min(chunk.capacity(), count * 8 - position));
+                readFully(in, chunk, position);
+                position += chunk.limit();
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    long posting = chunk.getLong();
+                    if ((int) (posting >> 32) != hash) {
+                        return Arrays.copyOf(offsets, found);
+                    }
+                    if (found == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, found * 2);
+                    }
+                    offsets[found++] = posting & 0xFFFFFFFFL;
+                }
+            }
+            return Arrays.copyOf(offsets, found);
+        }
+    }
+
+    // Sorts the postings appended while the segment was open into their sealed form
+    private static void sealPostings(Segment segment) throws IOException {
+        Path open = segment.openPostingsPath();
+        long[] postings = readPostings(open);
+        Arrays.sort(postings);
+        writePostings(segment, postings);
+        Files.deleteIfExists(open);
+    }
+
+    // Recovery path for segments without postings, reads every line once
+    private static void rebuildPostings(Segment segment) throws IOException {
+        long[] postings = new long[1024];
+        int count = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(segment.path))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            long offset = 0;
+            long lineStart = 0;
+            int b;
+            while ((b = in.read()) >= 0) {
+                offset++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                LogEntry entry = TransactionLogger.parseLogLine(line.toString(StandardCharsets.UTF_8));
+                if (entry != null) {
+                    if (count + 2 > postings.length) {
+                        postings = Arrays.copyOf(postings, postings.length * 2);
+                    }
+                    int hash = participantHash(entry.source);
+                    postings[count++] = posting(hash, lineStart);
+                    if (participantHash(entry.target) != hash) {
+                        postings[count++] = posting(participantHash(entry.target), lineStart);
+                    }
+                }
+                line.reset();
+                lineStart = offset;
+            }
+        }
+        postings = Arrays.copyOf(postings, count);
+        Arrays.sort(postings);
+        writePostings(segment, postings);
+        SavsCommonEconomy.LOGGER.info("Rebuilt economy log postings for " + segment.path.getFileName());
+    }
+
+    private static long[] readPostings(Path path) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocate((int) (in.size() / 8 * 8)); // Ignore a half-written tail
+            readFully(in, bytes, 0);
+            bytes.flip();
+            long[] postings = new long[bytes.remaining() / 8];
+            bytes.asLongBuffer().get(postings);
+            return postings;
+        }
+    }
+
+    // Written next to the target and moved over it, so concurrent searches never see half a file
+    private static void writePostings(Segment segment, long[] postings) throws IOException {
+        Path target = segment.postingsPath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            ByteBuffer bytes = ByteBuffer.allocate(postings.length * 8);
+            bytes.asLongBuffer().put(postings);
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writeFully(out, bytes);
+                out.force(false);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            int read = in.read(target, position);
+            if (read < 0) throw new EOFException();
+            position += read;
+        }
+    }
+
+    private static void readLines(Path path, long[] offsets, String cutoffText, Predicate<LogEntry> filter, List<LogEntry> results) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer line = ByteBuffer.allocate(512);
+            for (long offset : offsets) {
+                line.clear();
+                // Read until the newline, growing the buffer for long lines
+                int end = -1;
+                long position = offset;
+                while (end < 0) {
+                    int from = line.position();
+                    if (in.read(line, position) <= 0) break;
+                    position = offset + line.position();
+                    for (int i = from; i < line.position(); i++) {
+                        if (line.get(i) == '\n') {
+                            end = i;
+                            break;
+                        }
+                    }
+                    if (end < 0 && !line.hasRemaining()) {
+                        line = ByteBuffer.allocate(line.capacity() * 2).put(line.flip());
+                    }
+                }
+                if (end < 0) continue; // Still being written
+
+                String text = new String(line.array(), 0, end, StandardCharsets.UTF_8);
+                if (text.length() < 21 || text.substring(1, 20).compareTo(cutoffText) <= 0) continue;
+                LogEntry entry = TransactionLogger.parseLogLine(text);
+                if (entry != null && filter.test(entry)) {
+                    results.add(entry);
+                }
+            }
+        }
+    }
+
+    private static void scan(Path path, long offset, String cutoffText, Predicate<LogEntry> filter, List<LogEntry> results) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(offset);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() < 21 || line.substring(1, 20).compareTo(cutoffText) <= 0) continue;
+                LogEntry entry = TransactionLogger.parseLogLine(line);
+                if (entry != null && filter.test(entry)) {
+                    results.add(entry);
+                }
+            }
+        }
+    }
+
+    // Oldest first
+    private List<Segment> listSegments() {
+        List<Segment> segments = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return segments;
+        try (var files = Files.list(dir)) {
+            files.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) return;
+                String stem = name.substring(PREFIX.length(), name.length() - SUFFIX.length());
+                int split = stem.lastIndexOf('-');
+                if (split < 0) return;
+                try {
+                    segments.add(new Segment(LocalDate.parse(stem.substring(0, split)), Integer.parseInt(stem.substring(split + 1)), path));
+                } catch (DateTimeParseException | NumberFormatException ignored) {
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        segments.sort(Comparator.comparing((Segment s) -> s.day).thenComparingInt(s -> s.number));
+        return segments;
+    }
+}
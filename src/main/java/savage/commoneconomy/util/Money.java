@@ -0,0 +1,55 @@
+package savage.commoneconomy.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point money helpers. Balances are held as {@code long} minor units
+ * (e.g. cents at scale 2); BigDecimal is only used for parsing, formatting and SQL.
+ */
+public class Money {
+
+    private static volatile int scale = 2;
+    private static volatile long unitsPerWhole = 100;
+
+    public static void setScale(int newScale) {
+        if (newScale < 0 || newScale > 8) {
+            throw new IllegalArgumentException("Currency scale must be between 0 and 8, got " + newScale);
+        }
+        unitsPerWhole = BigDecimal.ONE.movePointRight(newScale).longValueExact();
+        scale = newScale;
+    }
+
+    public static int getScale() {
+        return scale;
+    }
+
+    /**
+     * Converts an amount to minor units, rounding half up to the configured scale.
+     *
+     * @throws ArithmeticException if the amount doesn't fit in a long
+     */
+    public static long toUnits(BigDecimal amount) {
+        return amount.setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal fromUnits(long units) {
+        return BigDecimal.valueOf(units, scale);
+    }
+
+    /**
+     * Converts whole currency (as used by the Common Economy API) to minor units.
+     *
+     * @throws ArithmeticException on overflow
+     */
+    public static long wholeToUnits(long whole) {
+        return Math.multiplyExact(whole, unitsPerWhole);
+    }
+
+    /**
+     * Converts minor units to whole currency, dropping any fraction.
+     */
+    public static long unitsToWhole(long units) {
+        return units / unitsPerWhole;
+    }
+}
@@ -0,0 +1,68 @@
+package savage.commoneconomy.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Account names sorted case-insensitively, so the names starting with a prefix are one range
+ * of the map. Used for tab completion and kept current as accounts are created, renamed and deleted.
+ */
+public class NameIndex {
+    // "lowercase name\0uuid" -> name as stored, so accounts sharing a name each have an entry
+    private final ConcurrentSkipListMap<String, String> sorted = new ConcurrentSkipListMap<>();
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+
+    public void put(UUID uuid, String name) {
+        if (name.equals(names.get(uuid))) return; // Called on every balance change, usually unchanged
+        synchronized (this) {
+            String old = names.put(uuid, name);
+            if (old != null) {
+                sorted.remove(key(old, uuid));
+            }
+            sorted.put(key(name, uuid), name);
+        }
+    }
+
+    public synchronized void remove(UUID uuid) {
+        String old = names.remove(uuid);
+        if (old != null) {
+            sorted.remove(key(old, uuid));
+        }
+    }
+
+    public synchronized void clear() {
+        names.clear();
+        sorted.clear();
+    }
+
+    /**
+     * @return up to {@code limit} distinct names starting with {@code prefix} (any case), in alphabetical order
+     */
+    public List<String> complete(String prefix, int limit) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+        String previous = null;
+        for (Map.Entry<String, String> entry : sorted.subMap(from, true, from + Character.MAX_VALUE, false).entrySet()) {
+            if (result.size() >= limit) break;
+            String name = entry.getValue();
+            if (!name.equalsIgnoreCase(previous)) {
+                result.add(name);
+                previous = name;
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    private static String key(String name, UUID uuid) {
+        return name.toLowerCase(Locale.ROOT) + '\0' + uuid;
+    }
+}
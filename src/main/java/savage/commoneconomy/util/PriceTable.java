@@ -0,0 +1,137 @@
+package savage.commoneconomy.util;
+
+import com.mojang.brigadier.StringReader;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import net.minecraft.command.argument.ItemStringReader;
+import net.minecraft.component.ComponentChanges;
+import net.minecraft.component.ComponentType;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.RegistryWrapper;
+import savage.commoneconomy.config.WorthConfig;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * worth.json compiled for lookups by raw item registry id, so pricing a stack is two array reads
+ * instead of building and hashing its id string. Immutable; a reload compiles a new table.
+ */
+public class PriceTable {
+    private final BigDecimal[] prices; // By raw item id, null if the item can't be sold
+    private final ComponentPrice[][] overrides; // By raw item id, most specific first, null if none
+    private final Map<String, BigDecimal> byId; // Sorted by item id, for /worth <item> and /worth list
+
+    // Price for stacks carrying the given components, e.g. minecraft:potion[potion_contents={potion:"minecraft:healing"}]
+    private static class ComponentPrice {
+        final ComponentChanges components;
+        final BigDecimal price;
+
+        ComponentPrice(ComponentChanges components, BigDecimal price) {
+            this.components = components;
+            this.price = price;
+        }
+
+        boolean matches(ItemStack stack) {
+            for (Map.Entry<ComponentType<?>, Optional<?>> change : components.entrySet()) {
+                Object actual = stack.get(change.getKey());
+                if (change.getValue().isPresent() ? !change.getValue().get().equals(actual) : actual != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private PriceTable(BigDecimal[] prices, ComponentPrice[][] overrides, Map<String, BigDecimal> byId) {
+        this.prices = prices;
+        this.overrides = overrides;
+        this.byId = byId;
+    }
+
+    /**
+     * @param registries used to parse component prices, or null to skip them (e.g. before the server has started)
+     */
+    public static PriceTable compile(WorthConfig config, RegistryWrapper.WrapperLookup registries) {
+        Map<String, BigDecimal> itemPrices = config.itemPrices != null ? config.itemPrices : Map.of();
+        BigDecimal[] prices = new BigDecimal[Registries.ITEM.size()];
+        int matched = 0;
+        for (Item item : Registries.ITEM) {
+            BigDecimal price = itemPrices.get(Registries.ITEM.getId(item).toString());
+            if (price != null) {
+                prices[Registries.ITEM.getRawId(item)] = price;
+                matched++;
+            }
+        }
+        if (matched < itemPrices.size()) {
+            savage.commoneconomy.SavsCommonEconomy.LOGGER.warn((itemPrices.size() - matched) + " worth.json item prices don't name a registered item and can't be sold");
+        }
+
+        ComponentPrice[][] overrides = new ComponentPrice[prices.length][];
+        if (config.componentPrices != null && !config.componentPrices.isEmpty()) {
+            if (registries == null) {
+                savage.commoneconomy.SavsCommonEconomy.LOGGER.warn("Ignoring worth.json component prices until the server has started");
+            } else {
+                ItemStringReader reader = new ItemStringReader(registries);
+                for (Map.Entry<String, BigDecimal> entry : config.componentPrices.entrySet()) {
+                    try {
+                        ItemStringReader.ItemResult result = reader.consume(new StringReader(entry.getKey()));
+                        int rawId = Registries.ITEM.getRawId(result.item().value());
+                        ComponentPrice[] existing = overrides[rawId];
+                        ComponentPrice[] updated = existing == null ? new ComponentPrice[1] : Arrays.copyOf(existing, existing.length + 1);
+                        updated[updated.length - 1] = new ComponentPrice(result.components(), entry.getValue());
+                        overrides[rawId] = updated;
+                    } catch (CommandSyntaxException e) {
+                        savage.commoneconomy.SavsCommonEconomy.LOGGER.warn("Ignoring worth.json component price " + entry.getKey() + ": " + e.getMessage());
+                    }
+                }
+                // The price naming the most components wins when several match
+                for (ComponentPrice[] candidates : overrides) {
+                    if (candidates != null) {
+                        Arrays.sort(candidates, (a, b) -> Integer.compare(b.components.entrySet().size(), a.components.entrySet().size()));
+                    }
+                }
+            }
+        }
+
+        return new PriceTable(prices, overrides, Collections.unmodifiableMap(new TreeMap<>(itemPrices)));
+    }
+
+    /**
+     * @return the price of one item of the stack, zero if it can't be sold
+     */
+    public BigDecimal get(ItemStack stack) {
+        int rawId = Registries.ITEM.getRawId(stack.getItem());
+        if (rawId < 0 || rawId >= prices.length) return BigDecimal.ZERO; // Registered after we compiled
+
+        ComponentPrice[] candidates = overrides[rawId];
+        if (candidates != null) {
+            for (ComponentPrice candidate : candidates) {
+                if (candidate.matches(stack)) {
+                    return candidate.price;
+                }
+            }
+        }
+        BigDecimal price = prices[rawId];
+        return price != null ? price : BigDecimal.ZERO;
+    }
+
+    /**
+     * @return the base price of the item with this id (e.g. minecraft:apple), zero if it can't be sold
+     */
+    public BigDecimal get(String itemId) {
+        return byId.getOrDefault(itemId, BigDecimal.ZERO);
+    }
+
+    /**
+     * @return every base item price by item id, read-only
+     */
+    public Map<String, BigDecimal> all() {
+        return byId;
+    }
+}
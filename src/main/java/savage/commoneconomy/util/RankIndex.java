@@ -0,0 +1,251 @@
+package savage.commoneconomy.util;
+
+import savage.commoneconomy.EconomyManager.AccountData;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Every account ordered by balance (highest first, ties by UUID), for /baltop and /balrank.
+ * A treap whose nodes count their subtree, so updates, a player's rank and the start of any
+ * page are all O(log n).
+ */
+public class RankIndex {
+    private final Map<UUID, Node> nodes = new HashMap<>();
+    private Node root;
+
+    private static class Node {
+        final UUID uuid;
+        String name; // Name and version aren't part of the ordering and are updated in place
+        final long units;
+        long version;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        Node left;
+        Node right;
+        int size = 1;
+
+        Node(UUID uuid, String name, long units, long version) {
+            this.uuid = uuid;
+            this.name = name;
+            this.units = units;
+            this.version = version;
+        }
+    }
+
+    public static class Entry {
+        public final UUID uuid;
+        public final String name;
+        public final long units;
+        public final int rank; // 1 for the richest
+
+        Entry(Node node, int rank) {
+            this.uuid = node.uuid;
+            this.name = node.name;
+            this.units = node.units;
+            this.rank = rank;
+        }
+
+        public BigDecimal balance() {
+            return Money.fromUnits(units);
+        }
+    }
+
+    /**
+     * Sets the account's balance, adding it if it isn't indexed yet. Results of concurrent
+     * operations arrive out of order, so a balance older than the indexed version is ignored.
+     *
+     * @param name new name, or null to keep the indexed one
+     */
+    public synchronized void update(UUID uuid, String name, long units, long version) {
+        Node old = nodes.get(uuid);
+        if (old != null) {
+            if (version < old.version) return;
+            if (old.units == units) {
+                // Same position, only the name and version can change
+                if (name != null) {
+                    old.name = name;
+                }
+                old.version = version;
+                return;
+            }
+            root = erase(root, old);
+            if (name == null) name = old.name;
+        }
+        Node node = new Node(uuid, name != null ? name : "Unknown", units, version);
+        nodes.put(uuid, node);
+        root = insert(root, node);
+    }
+
+    /**
+     * Indexes the account as {@code current} returns it, read under the index lock. For sources
+     * whose version doesn't move with every change (the write-behind ledger): whichever caller
+     * runs last also read last, so the index can't end up with an older balance.
+     *
+     * @return false if {@code current} returned null
+     */
+    public synchronized boolean sync(UUID uuid, java.util.function.Supplier<AccountData> current) {
+        AccountData data = current.get();
+        if (data == null) return false;
+        Node old = nodes.get(uuid);
+        update(uuid, data.name, data.units, old != null ? Math.max(old.version, data.version) : data.version);
+        return true;
+    }
+
+    public synchronized void remove(UUID uuid) {
+        Node old = nodes.remove(uuid);
+        if (old != null) {
+            root = erase(root, old);
+        }
+    }
+
+    /**
+     * Replaces the whole index, e.g. with every account from storage on load.
+     */
+    public synchronized void rebuild(Map<UUID, AccountData> accounts) {
+        nodes.clear();
+        root = null;
+        for (Map.Entry<UUID, AccountData> account : accounts.entrySet()) {
+            AccountData data = account.getValue();
+            Node node = new Node(account.getKey(), data.name != null ? data.name : "Unknown", data.units, data.version);
+            nodes.put(account.getKey(), node);
+            root = insert(root, node);
+        }
+    }
+
+    /**
+     * @return the account's rank, 1 for the richest, or 0 if it isn't indexed
+     */
+    public synchronized int rank(UUID uuid) {
+        Node target = nodes.get(uuid);
+        if (target == null) return 0;
+        int before = 0;
+        Node node = root;
+        while (node != target) {
+            if (compare(target, node) < 0) {
+                node = node.left;
+            } else {
+                before += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return before + size(node.left) + 1;
+    }
+
+    /**
+     * @return up to {@code limit} accounts starting at the {@code offset}-th richest (0-based)
+     */
+    public synchronized List<Entry> range(int offset, int limit) {
+        List<Entry> result = new ArrayList<>(Math.max(0, Math.min(limit, size(root) - offset)));
+        collect(root, offset, limit, 0, result);
+        return result;
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return the sum of all indexed balances, O(n)
+     */
+    public synchronized BigDecimal total() {
+        long units = 0;
+        BigDecimal overflow = BigDecimal.ZERO;
+        for (Node node : nodes.values()) {
+            try {
+                units = Math.addExact(units, node.units);
+            } catch (ArithmeticException e) {
+                overflow = overflow.add(Money.fromUnits(units));
+                units = node.units;
+            }
+        }
+        return overflow.add(Money.fromUnits(units));
+    }
+
+    // In-order walk that skips whole subtrees before offset
+    private static void collect(Node node, int offset, int limit, int before, List<Entry> result) {
+        if (node == null || result.size() >= limit) return;
+        int leftSize = size(node.left);
+        if (offset < before + leftSize) {
+            collect(node.left, offset, limit, before, result);
+        }
+        int rank = before + leftSize; // 0-based
+        if (rank >= offset && result.size() < limit) {
+            result.add(new Entry(node, rank + 1));
+        }
+        collect(node.right, offset, limit, rank + 1, result);
+    }
+
+    private static int compare(Node a, Node b) {
+        int byBalance = Long.compare(b.units, a.units);
+        return byBalance != 0 ? byBalance : a.uuid.compareTo(b.uuid);
+    }
+
+    private static int size(Node node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static Node update(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    private static Node insert(Node node, Node added) {
+        if (node == null) return added;
+        if (added.priority > node.priority) {
+            Node[] parts = split(node, added);
+            added.left = parts[0];
+            added.right = parts[1];
+            return update(added);
+        }
+        if (compare(added, node) < 0) {
+            node.left = insert(node.left, added);
+        } else {
+            node.right = insert(node.right, added);
+        }
+        return update(node);
+    }
+
+    // Splits into nodes ordered before the key and the rest
+    private static Node[] split(Node node, Node key) {
+        if (node == null) return new Node[2];
+        if (compare(node, key) < 0) {
+            Node[] parts = split(node.right, key);
+            node.right = parts[0];
+            parts[0] = update(node);
+            return parts;
+        }
+        Node[] parts = split(node.left, key);
+        node.left = parts[1];
+        parts[1] = update(node);
+        return parts;
+    }
+
+    private static Node erase(Node node, Node removed) {
+        if (node == null) return null;
+        if (node == removed) {
+            return merge(node.left, node.right);
+        }
+        if (compare(removed, node) < 0) {
+            node.left = erase(node.left, removed);
+        } else {
+            node.right = erase(node.right, removed);
+        }
+        return update(node);
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+}
@@ -10,6 +10,8 @@ import net.minecraft.text.Text;
 import net.minecraft.server.network.ServerPlayerEntity;
 
 import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 public class RealRedisBackend implements RedisBackend {
@@ -75,13 +77,42 @@ public class RealRedisBackend implements RedisBackend {
         }
     }
 
+    @Override
+    public void publishBatch(Map<UUID, BigDecimal> balances, String type, String sourcePlayer) {
+        if (!RedisService.isReady()) return;
+
+        Map<String, BigDecimal> encoded = new LinkedHashMap<>();
+        for (Map.Entry<UUID, BigDecimal> entry : balances.entrySet()) {
+            encoded.put(entry.getKey().toString(), entry.getValue());
+        }
+        TransactionMessage msg = new TransactionMessage(null, null, type, sourcePlayer, null);
+        msg.balances = encoded;
+
+        String json = gson.toJson(msg);
+        RedisService.get().publish(channelName, json);
+
+        if (config.debugLogging) {
+            SavsCommonEconomy.LOGGER.info("Redis: Published batch of " + balances.size() + " balance updates");
+        }
+    }
+
     private void handleMessage(String json) {
         try {
             TransactionMessage message = gson.fromJson(json, TransactionMessage.class);
+            if (message.balances != null) {
+                // Batch update, only caches to invalidate
+                for (Map.Entry<String, BigDecimal> entry : message.balances.entrySet()) {
+                    EconomyManager.getInstance().invalidateCache(UUID.fromString(entry.getKey()), entry.getValue());
+                }
+                if (config.debugLogging) {
+                    SavsCommonEconomy.LOGGER.info("Redis: Received batch of " + message.balances.size() + " balance updates");
+                }
+                return;
+            }
             UUID uuid = UUID.fromString(message.uuid);
 
             // Invalidate local cache
-            EconomyManager.getInstance().invalidateCache(uuid);
+            EconomyManager.getInstance().invalidateCache(uuid, message.balance);
             
             // Notify player if online
             if (server != null) {
@@ -108,6 +139,7 @@ public class RealRedisBackend implements RedisBackend {
         String type;
         String sourcePlayer;
         String chatMessage;
+        Map<String, BigDecimal> balances; // Set instead of uuid/balance for batch updates
 
         TransactionMessage(String uuid, BigDecimal balance, String type, String sourcePlayer, String chatMessage) {
             this.uuid = uuid;
@@ -0,0 +1,174 @@
+package savage.commoneconomy.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import savage.commoneconomy.util.TransactionLogger.LogEntry;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+/**
+ * The most recent transaction log entries, kept in memory so short /ecolog windows need no I/O.
+ * A lock-free ring holds the last entries of everyone, and a small list per participant holds
+ * theirs. A window is answered from memory only if nothing newer than its cutoff was ever
+ * pushed out, otherwise the caller has to go to storage.
+ */
+public class RecentTransactions {
+    private final AtomicReferenceArray<LogEntry> ring;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();
+    // Newest timestamp no longer in the ring; the ring is complete for anything after it
+    private final AtomicLong ringEvictedUpTo;
+
+    private final int perPlayer;
+    private final Cache<String, PlayerEntries> players;
+    // Newest time a player's list was dropped; lists created later are only complete from then on
+    private final AtomicLong playersEvictedUpTo;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static class PlayerEntries {
+        final LogEntry[] entries;
+        long evictedUpTo;
+        int next;
+        int size;
+
+        PlayerEntries(int capacity, long evictedUpTo) {
+            this.entries = new LogEntry[capacity];
+            this.evictedUpTo = evictedUpTo;
+        }
+
+        synchronized void add(LogEntry entry) {
+            LogEntry old = entries[next];
+            if (old != null) {
+                evictedUpTo = Math.max(evictedUpTo, old.epochMillis());
+            }
+            entries[next] = entry;
+            next = (next + 1) % entries.length;
+            size = Math.min(size + 1, entries.length);
+        }
+
+        // Null if the window isn't complete
+        synchronized List<LogEntry> since(long cutoffMillis) {
+            if (cutoffMillis <= evictedUpTo) return null; // Millisecond precision, so a tie may hide a newer evicted entry
+            List<LogEntry> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(entries[(next - 1 - i + entries.length) % entries.length]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @param capacity  entries kept in the global ring, rounded up to a power of two
+     * @param perPlayer entries kept per participant
+     * @param maxPlayers participants with their own list
+     */
+    public RecentTransactions(int capacity, int perPlayer, int maxPlayers) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.perPlayer = Math.max(1, perPlayer);
+
+        // Nothing from before we started is in memory
+        long now = System.currentTimeMillis();
+        this.ringEvictedUpTo = new AtomicLong(now);
+        this.playersEvictedUpTo = new AtomicLong(now);
+        this.players = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxPlayers))
+                .evictionListener((String name, PlayerEntries entries, com.github.benmanes.caffeine.cache.RemovalCause cause) ->
+                        playersEvictedUpTo.accumulateAndGet(System.currentTimeMillis(), Math::max))
+                .build();
+    }
+
+    public void add(LogEntry entry) {
+        LogEntry old = ring.getAndSet((int) (next.getAndIncrement() & mask), entry);
+        if (old != null) {
+            ringEvictedUpTo.accumulateAndGet(old.epochMillis(), Math::max);
+        }
+
+        String source = key(entry.source);
+        String target = key(entry.target);
+        playerEntries(source).add(entry);
+        if (!target.equals(source)) {
+            playerEntries(target).add(entry);
+        }
+    }
+
+    private PlayerEntries playerEntries(String key) {
+        return players.get(key, k -> new PlayerEntries(perPlayer, playersEvictedUpTo.get()));
+    }
+
+    private static String key(String name) {
+        return name != null ? name.toLowerCase(Locale.ROOT) : "null";
+    }
+
+    /**
+     * @param participant exact participant name whose own list may be used, or null
+     * @return matching entries newer than the cutoff, newest first, or null if memory doesn't cover the window
+     */
+    public List<LogEntry> search(String participant, LocalDateTime cutoff, Predicate<LogEntry> filter) {
+        long cutoffMillis = cutoff.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
+        List<LogEntry> candidates = null;
+        if (participant != null) {
+            PlayerEntries entries = players.getIfPresent(key(participant));
+            // No list may mean no activity or a list being evicted right now, so let the ring answer
+            candidates = entries != null ? entries.since(cutoffMillis) : null;
+        }
+        if (candidates == null && cutoffMillis > ringEvictedUpTo.get()) {
+            candidates = ringEntries();
+        }
+        if (candidates == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+
+        List<LogEntry> results = new ArrayList<>();
+        for (LogEntry entry : candidates) {
+            if (entry.timestamp.isAfter(cutoff) && filter.test(entry)) {
+                results.add(entry);
+            }
+        }
+        return results;
+    }
+
+    // Newest first; a slot overwritten while we read it can show up twice, hence the identity set
+    private List<LogEntry> ringEntries() {
+        long end = next.get();
+        long start = Math.max(0, end - ring.length());
+        List<LogEntry> entries = new ArrayList<>((int) (end - start));
+        Set<LogEntry> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (long i = end - 1; i >= start; i--) {
+            LogEntry entry = ring.get((int) (i & mask));
+            if (entry != null && seen.add(entry)) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparing((LogEntry entry) -> entry.timestamp).reversed());
+        return entries;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+}
@@ -1,6 +1,7 @@
 package savage.commoneconomy.util;
 
 import java.math.BigDecimal;
+import java.util.Map;
 import java.util.UUID;
 import net.minecraft.server.MinecraftServer;
 
@@ -10,4 +11,5 @@ public interface RedisBackend {
     boolean isConnected();
     void setServer(MinecraftServer server);
     void publishTransaction(UUID targetUuid, BigDecimal newBalance, String type, String sourcePlayer, String message);
+    void publishBatch(Map<UUID, BigDecimal> balances, String type, String sourcePlayer);
 }
@@ -5,6 +5,7 @@ import savage.commoneconomy.SavsCommonEconomy;
 import savage.commoneconomy.config.EconomyConfig;
 import net.fabricmc.loader.api.FabricLoader;
 import java.math.BigDecimal;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -66,6 +67,15 @@ public class RedisManager {
         }
     }
 
+    /**
+     * Publishes many balance changes as a single message.
+     */
+    public void publishBatchUpdate(Map<UUID, BigDecimal> balances, String type, String sourcePlayer) {
+        if (backend != null && !balances.isEmpty()) {
+            backend.publishBatch(balances, type, sourcePlayer);
+        }
+    }
+
     public void shutdown() {
         if (backend != null) backend.shutdown();
     }
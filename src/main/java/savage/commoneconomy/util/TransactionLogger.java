@@ -2,6 +2,7 @@ package savage.commoneconomy.util;
 
 import net.fabricmc.loader.api.FabricLoader;
 import savage.commoneconomy.SavsCommonEconomy;
+import savage.commoneconomy.config.EconomyConfig;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -11,44 +12,353 @@ import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Transaction log. Entries go into a bounded queue and a background writer stores them in
+ * batches: one JDBC batch per commit for SQL storage, one buffered append to the {@link FileTransactionLog} otherwise.
+ * What happens when the queue is full is set by {@code transactionLog.overflowPolicy}.
+ */
 public class TransactionLogger {
 
-    private static final File LOG_FILE = FabricLoader.getInstance().getGameDir().resolve("logs/economy.log").toFile();
-    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static final java.util.concurrent.ExecutorService EXECUTOR = java.util.concurrent.Executors.newSingleThreadExecutor();
+    // Entries that couldn't reach the database, imported again on the next start
+    private static final File SPILL_FILE = FabricLoader.getInstance().getGameDir().resolve("logs/economy-spill.log").toFile();
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Object FILE_LOCK = new Object();
+
+    private static volatile EconomyConfig.TransactionLogConfig config;
+    private static volatile BlockingQueue<LogEntry> queue;
+    private static volatile Thread writer;
+    private static FileTransactionLog fileLog;
+    private static volatile RecentTransactions recent;
+    private static volatile boolean running;
+
+    private static final AtomicLong written = new AtomicLong();
+    private static final AtomicLong batches = new AtomicLong();
+    private static final AtomicLong spilled = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Starts the background writer. Called once storage is loaded.
+     */
+    public static synchronized void start() {
+        if (writer != null) return;
+        config = savage.commoneconomy.EconomyManager.getInstance().getConfig().transactionLog;
+        queue = new ArrayBlockingQueue<>(Math.max(1, config.queueCapacity));
+        if (config.recentCapacity > 0) {
+            recent = new RecentTransactions(config.recentCapacity, config.recentPerPlayer, config.recentPlayers);
+        }
+        running = true;
+        writer = new Thread(TransactionLogger::runWriter, "savs-economy-txlog");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops the writer after it has stored everything still queued. Must run before storage shuts down.
+     */
+    public static void shutdown() {
+        Thread current;
+        synchronized (TransactionLogger.class) {
+            current = writer;
+            if (current == null) return;
+            running = false;
+            writer = null;
+        }
+        try {
+            current.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (current.isAlive()) {
+            SavsCommonEconomy.LOGGER.warn("Timed out flushing the economy transaction log, " + queue.size() + " entries left");
+        }
+        FileTransactionLog log;
+        synchronized (TransactionLogger.class) {
+            log = fileLog;
+            fileLog = null;
+        }
+        if (log == null) return; // Never opened, e.g. on SQL backends, nothing to close
+        try {
+            log.close();
+        } catch (IOException e) {
+            SavsCommonEconomy.LOGGER.error("Failed to close economy log", e);
+        }
+    }
 
     public static void log(String type, String source, String target, BigDecimal amount, String details) {
-        EXECUTOR.submit(() -> {
-            long timestamp = System.currentTimeMillis();
-            
-            // Try to log to database if available
+        LogEntry entry = new LogEntry(LocalDateTime.now(), type, source, target, amount, details);
+        RecentTransactions memory = recent;
+        if (memory != null) {
+            memory.add(entry);
+        }
+        BlockingQueue<LogEntry> current = queue;
+        if (!running || current == null) {
+            // Not started yet or already stopped, keep the entry without touching storage
+            spill(List.of(entry));
+            return;
+        }
+        if (current.offer(entry)) {
+            return;
+        }
+
+        switch (config.overflowPolicy) {
+            case BLOCK -> {
+                try {
+                    current.put(entry);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                }
+            }
+            case SPILL -> spill(List.of(entry));
+            case DROP -> dropped.incrementAndGet();
+        }
+    }
+
+    private static void runWriter() {
+        importSpill();
+        int batchSize = Math.max(1, config.batchSize);
+        List<LogEntry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                LogEntry first = queue.poll(config.flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    syncIdle();
+                    continue;
+                }
+                batch.add(first);
+
+                // Group commit: gather up to batchSize entries, waiting at most flushIntervalMs for them
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) break;
+                    LogEntry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                queue.drainTo(batch);
+                running = false;
+            }
+
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private static void syncIdle() {
+        if (savage.commoneconomy.EconomyManager.getStorage() instanceof savage.commoneconomy.storage.SqlStorage) return;
+        try {
+            fileLog().syncIfDue();
+        } catch (IOException e) {
+            SavsCommonEconomy.LOGGER.error("Failed to sync economy log", e);
+        }
+    }
+
+    private static void writeBatch(List<LogEntry> batch) {
+        try {
             savage.commoneconomy.storage.EconomyStorage storage = savage.commoneconomy.EconomyManager.getStorage();
             if (storage instanceof savage.commoneconomy.storage.SqlStorage) {
-                storage.logTransaction(timestamp, source, target, amount, type, details);
-                return;
+                if (!storage.logTransactions(batch)) {
+                    spill(batch);
+                    return;
+                }
+            } else {
+                fileLog().append(batch);
             }
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+        } catch (Exception e) {
+            SavsCommonEconomy.LOGGER.error("Failed to write economy transaction log batch", e);
+            spill(batch);
+        }
+    }
 
-            // Fallback to file logging
-            LogEntry entry = new LogEntry(LocalDateTime.now(), type, source, target, amount, details);
-            String logLine = formatLogEntry(entry);
+    // Without SQL storage the log file is the destination anyway
+    private static void spill(List<LogEntry> entries) {
+        boolean sql = savage.commoneconomy.EconomyManager.getStorage() instanceof savage.commoneconomy.storage.SqlStorage;
+        try {
+            if (sql) {
+                appendLines(SPILL_FILE, entries);
+            } else {
+                fileLog().append(entries);
+            }
+            spilled.addAndGet(entries.size());
+        } catch (IOException e) {
+            SavsCommonEconomy.LOGGER.error("Failed to write to economy log", e);
+            dropped.addAndGet(entries.size());
+        }
+    }
+
+    // Created on first use, entries can be spilled before start()
+    private static synchronized FileTransactionLog fileLog() {
+        if (fileLog == null) {
+            java.nio.file.Path logs = FabricLoader.getInstance().getGameDir().resolve("logs");
+            EconomyConfig.TransactionLogConfig logConfig = savage.commoneconomy.EconomyManager.getInstance().getConfig().transactionLog;
+            fileLog = new FileTransactionLog(logs.resolve("economy"), logs.resolve("economy.log"),
+                    logConfig.segmentMaxBytes, logConfig.fsync, logConfig.fsyncIntervalMs);
+        }
+        return fileLog;
+    }
 
-            try (FileWriter fw = new FileWriter(LOG_FILE, true);
+    private static void appendLines(File file, List<LogEntry> entries) throws IOException {
+        synchronized (FILE_LOCK) {
+            try (FileWriter fw = new FileWriter(file, true);
                  BufferedWriter bw = new BufferedWriter(fw);
                  PrintWriter out = new PrintWriter(bw)) {
-                out.println(logLine);
+                for (LogEntry entry : entries) {
+                    out.println(formatLogEntry(entry));
+                }
+            }
+        }
+    }
+
+    // Moves entries spilled during the last run into the database
+    private static void importSpill() {
+        savage.commoneconomy.storage.EconomyStorage storage = savage.commoneconomy.EconomyManager.getStorage();
+        if (!(storage instanceof savage.commoneconomy.storage.SqlStorage)) return;
+
+        synchronized (FILE_LOCK) {
+            if (!SPILL_FILE.exists()) return;
+            List<LogEntry> entries = new ArrayList<>();
+            try (java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.FileReader(SPILL_FILE))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    LogEntry entry = parseLogLine(line);
+                    if (entry != null) {
+                        entries.add(entry);
+                    }
+                }
             } catch (IOException e) {
-                SavsCommonEconomy.LOGGER.error("Failed to write to economy log", e);
+                SavsCommonEconomy.LOGGER.error("Failed to read spilled economy log entries", e);
+                return;
+            }
+            if (entries.isEmpty() || storage.logTransactions(entries)) {
+                if (!SPILL_FILE.delete()) {
+                    SavsCommonEconomy.LOGGER.warn("Could not delete " + SPILL_FILE);
+                }
+                if (!entries.isEmpty()) {
+                    SavsCommonEconomy.LOGGER.info("Imported " + entries.size() + " spilled economy log entries");
+                }
             }
-        });
+        }
+    }
+
+    public static int getQueuedCount() {
+        BlockingQueue<LogEntry> current = queue;
+        return current != null ? current.size() : 0;
+    }
+
+    public static int getQueueCapacity() {
+        return config != null ? Math.max(1, config.queueCapacity) : 0;
+    }
+
+    public static long getWrittenCount() {
+        return written.get();
+    }
+
+    public static long getBatchCount() {
+        return batches.get();
+    }
+
+    public static long getSpilledCount() {
+        return spilled.get();
+    }
+
+    public static long getDroppedCount() {
+        return dropped.get();
     }
 
-    private static String formatLogEntry(LogEntry entry) {
+    /**
+     * @return the in-memory recent entries, or null if disabled or not started
+     */
+    public static RecentTransactions getRecent() {
+        return recent;
+    }
+
+    static String formatLogEntry(LogEntry entry) {
         return String.format("[%s] [%s] %s -> %s: $%s (%s)", 
             entry.timestamp.format(DATE_FORMAT), entry.type, entry.source, entry.target, entry.amount.toPlainString(), entry.details);
     }
 
+    /**
+     * Fetches one page of matching entries, newest first, plus the total match count.
+     * With a cursor from the previous page only the next page's rows are read.
+     *
+     * @param target {@code *} for everyone, a player name, or a name prefix ending in {@code *}
+     * @param after  cursor of the last entry already shown, or null to jump to {@code page}
+     */
+    public static LogPage searchLogPage(String target, LocalDateTime cutoff, LogCursor after, int page, int pageSize) {
+        String participant = canonicalParticipant(target);
+        // Entries from memory have no row ids, so later pages come back here by page number
+        java.util.List<LogEntry> inMemory = after == null ? searchRecent(participant, cutoff) : null;
+        savage.commoneconomy.storage.EconomyStorage storage = savage.commoneconomy.EconomyManager.getStorage();
+        if (inMemory == null && storage instanceof savage.commoneconomy.storage.SqlStorage) {
+            long cutoffTimestamp = cutoff.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
+            int total = storage.countLogs(participant, cutoffTimestamp);
+            int current = after != null ? page : Math.max(1, Math.min(page, LogPage.pageCount(total, pageSize)));
+            int skip = after != null ? 0 : (current - 1) * pageSize;
+            return new LogPage(storage.searchLogs(participant, cutoffTimestamp, after, skip, pageSize), total, current, pageSize);
+        }
+
+        java.util.List<LogEntry> all = inMemory != null ? inMemory : searchStored(participant, cutoff);
+        int current = Math.max(1, Math.min(page, LogPage.pageCount(all.size(), pageSize)));
+        int from = Math.min((current - 1) * pageSize, all.size());
+        return new LogPage(new ArrayList<>(all.subList(from, Math.min(from + pageSize, all.size()))), all.size(), current, pageSize);
+    }
+
+    // Logs store the name as typed at the time, so look up the account's exact spelling for index matches
+    private static String canonicalParticipant(String target) {
+        if (target.endsWith("*")) {
+            return target;
+        }
+        savage.commoneconomy.EconomyManager manager = savage.commoneconomy.EconomyManager.getInstance();
+        java.util.UUID uuid = manager.getUUID(target);
+        if (uuid != null) {
+            savage.commoneconomy.EconomyManager.AccountData account = manager.getAccounts(List.of(uuid)).get(uuid);
+            if (account != null && account.name != null) {
+                return account.name;
+            }
+        }
+        return target;
+    }
+
+    private static boolean matchesParticipant(LogEntry entry, String target) {
+        if (target.equals("*")) {
+            return true;
+        }
+        if (target.endsWith("*")) {
+            String prefix = target.substring(0, target.length() - 1).toLowerCase();
+            return entry.source.toLowerCase().startsWith(prefix) || entry.target.toLowerCase().startsWith(prefix);
+        }
+        return entry.source.equalsIgnoreCase(target) || entry.target.equalsIgnoreCase(target);
+    }
+
     public static java.util.List<LogEntry> searchLogs(String target, LocalDateTime cutoff) {
+        java.util.List<LogEntry> inMemory = searchRecent(target, cutoff);
+        return inMemory != null ? inMemory : searchStored(target, cutoff);
+    }
+
+    // Only this server's entries are in memory, so it can't answer for a log shared over Redis
+    private static java.util.List<LogEntry> searchRecent(String target, LocalDateTime cutoff) {
+        RecentTransactions memory = recent;
+        if (memory == null || savage.commoneconomy.EconomyManager.getInstance().getConfig().redis.enabled) {
+            return null;
+        }
+        return memory.search(target.endsWith("*") ? null : target, cutoff, entry -> matchesParticipant(entry, target));
+    }
+
+    private static java.util.List<LogEntry> searchStored(String target, LocalDateTime cutoff) {
         // Try to search from database if available
         savage.commoneconomy.storage.EconomyStorage storage = savage.commoneconomy.EconomyManager.getStorage();
         if (storage instanceof savage.commoneconomy.storage.SqlStorage) {
@@ -56,75 +366,140 @@ public class TransactionLogger {
             return storage.searchLogs(target, cutoffTimestamp);
         }
 
-        if (!LOG_FILE.exists()) {
-            return java.util.Collections.emptyList();
-        }
-
-        java.util.List<LogEntry> results = new java.util.ArrayList<>();
-        try (java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.FileReader(LOG_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Line format: [yyyy-MM-dd HH:mm:ss] [TYPE] Source -> Target: $Amount (Details)
-                if (line.length() < 21) continue;
+        java.util.List<LogEntry> results = fileLog().search(cutoff, target.endsWith("*") ? null : target,
+                entry -> matchesParticipant(entry, target));
 
-                try {
-                    // Parse timestamp
-                    String timestampStr = line.substring(1, 20);
-                    LocalDateTime timestamp = LocalDateTime.parse(timestampStr, DATE_FORMAT);
-                    
-                    if (timestamp.isAfter(cutoff)) {
-                        if (target.equals("*") || line.toLowerCase().contains(target.toLowerCase())) {
-                            // Parse the rest of the line
-                            // Expected: [TYPE] Source -> Target: $Amount (Details)
-                            String rest = line.substring(22);
-                            int typeEnd = rest.indexOf(']');
-                            String type = rest.substring(1, typeEnd);
-                            
-                            String content = rest.substring(typeEnd + 2); // Skip "] "
-                            String[] parts = content.split(" -> ");
-                            String source = parts[0];
-                            
-                            String remaining = parts[1];
-                            int amountStart = remaining.indexOf(": $");
-                            String targetName = remaining.substring(0, amountStart);
-                            
-                            String amountAndDetails = remaining.substring(amountStart + 3);
-                            int detailsStart = amountAndDetails.indexOf(" (");
-                            String amountStr = amountAndDetails.substring(0, detailsStart);
-                            String details = amountAndDetails.substring(detailsStart + 2, amountAndDetails.length() - 1);
-                            
-                            results.add(new LogEntry(timestamp, type, source, targetName, new BigDecimal(amountStr), details));
-                        }
-                    }
-                } catch (Exception e) {
-                    // Ignore malformed lines, but maybe log debug if needed
-                    // SavsCommonEconomy.LOGGER.warn("Malformed log line: " + line);
-                }
-            }
-        } catch (IOException e) {
-            SavsCommonEconomy.LOGGER.error("Failed to read economy log", e);
-        }
-        
         // Reverse to show newest first
         java.util.Collections.reverse(results);
         return results;
     }
 
+    /**
+     * Parses a line written by {@link #formatLogEntry}.
+     *
+     * @return the entry, or null if the line is malformed
+     */
+    static LogEntry parseLogLine(String line) {
+        // Line format: [yyyy-MM-dd HH:mm:ss] [TYPE] Source -> Target: $Amount (Details)
+        if (line.length() < 21) return null;
+
+        try {
+            LocalDateTime timestamp = LocalDateTime.parse(line.substring(1, 20), DATE_FORMAT);
+
+            // Expected: [TYPE] Source -> Target: $Amount (Details)
+            String rest = line.substring(22);
+            int typeEnd = rest.indexOf(']');
+            String type = rest.substring(1, typeEnd);
+
+            String content = rest.substring(typeEnd + 2); // Skip "] "
+            String[] parts = content.split(" -> ");
+            String source = parts[0];
+
+            String remaining = parts[1];
+            int amountStart = remaining.indexOf(": $");
+            String targetName = remaining.substring(0, amountStart);
+
+            String amountAndDetails = remaining.substring(amountStart + 3);
+            int detailsStart = amountAndDetails.indexOf(" (");
+            String amountStr = amountAndDetails.substring(0, detailsStart);
+            String details = amountAndDetails.substring(detailsStart + 2, amountAndDetails.length() - 1);
+
+            return new LogEntry(timestamp, type, source, targetName, new BigDecimal(amountStr), details);
+        } catch (Exception e) {
+            return null; // Ignore malformed lines
+        }
+    }
+
     public static class LogEntry {
+        public final long id; // Database row id, 0 for file entries
         public final LocalDateTime timestamp;
         public final String type;
         public final String source;
         public final String target;
         public final BigDecimal amount;
         public final String details;
+        // amount.unscaledValue() when it fits in 18 digits, worked out here so the file log writer doesn't allocate for it
+        final long unscaledAmount;
 
         public LogEntry(LocalDateTime timestamp, String type, String source, String target, BigDecimal amount, String details) {
+            this(0, timestamp, type, source, target, amount, details);
+        }
+
+        public LogEntry(long id, LocalDateTime timestamp, String type, String source, String target, BigDecimal amount, String details) {
+            this.id = id;
             this.timestamp = timestamp;
             this.type = type;
             this.source = source;
             this.target = target;
             this.amount = amount;
             this.details = details;
+            this.unscaledAmount = amount.scale() >= 0 && amount.scale() <= 18 && amount.precision() <= 18 ? amount.unscaledValue().longValue() : 0;
+        }
+
+        public long epochMillis() {
+            return timestamp.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+    }
+
+    /**
+     * Position of an entry in the newest-first order, used to fetch the page after it.
+     */
+    public static class LogCursor {
+        public final long timestamp;
+        public final long id;
+
+        public LogCursor(long timestamp, long id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+
+        public static LogCursor of(LogEntry entry) {
+            return new LogCursor(entry.epochMillis(), entry.id);
+        }
+
+        /**
+         * @return the cursor, or null if the text isn't one produced by {@link #toString()}
+         */
+        public static LogCursor parse(String text) {
+            int split = text.indexOf('_');
+            if (split < 0) return null;
+            try {
+                return new LogCursor(Long.parseLong(text.substring(0, split)), Long.parseLong(text.substring(split + 1)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return timestamp + "_" + id; // Only characters allowed in an unquoted command argument
+        }
+    }
+
+    public static class LogPage {
+        public final List<LogEntry> entries;
+        public final int total;
+        public final int page;
+        public final int totalPages;
+
+        public LogPage(List<LogEntry> entries, int total, int page, int pageSize) {
+            this.entries = entries;
+            this.total = total;
+            this.page = page;
+            this.totalPages = pageCount(total, pageSize);
+        }
+
+        static int pageCount(int total, int pageSize) {
+            return Math.max(1, (total + pageSize - 1) / pageSize);
+        }
+
+        /**
+         * @return the cursor for the next page, or null if entries have no row ids (file log)
+         */
+        public LogCursor nextCursor() {
+            if (entries.isEmpty()) return null;
+            LogEntry last = entries.get(entries.size() - 1);
+            return last.id > 0 ? LogCursor.of(last) : null;
         }
     }
 }
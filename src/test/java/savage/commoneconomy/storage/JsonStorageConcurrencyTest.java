@@ -0,0 +1,141 @@
+package savage.commoneconomy.storage;
+
+import net.fabricmc.loader.api.FabricLoader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import savage.commoneconomy.EconomyManager;
+import savage.commoneconomy.EconomyManager.AccountData;
+import savage.commoneconomy.EconomyManager.TransferResult;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hammers JsonStorage from many threads and checks that no update is lost and no money appears or vanishes.
+ */
+class JsonStorageConcurrencyTest {
+    private static final int THREADS = 16;
+    private static final int OPERATIONS = 5000;
+    private static final int ACCOUNTS = 24;
+
+    @BeforeEach
+    void clearStorage() throws IOException {
+        Path dir = FabricLoader.getInstance().getConfigDir().resolve("savs-common-economy");
+        Files.createDirectories(dir);
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("balances")) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    void concurrentUpdatesKeepEveryChange() throws Exception {
+        EconomyManager manager = EconomyManager.getInstance();
+        JsonStorage storage = new JsonStorage(manager);
+        storage.load();
+
+        UUID[] accounts = new UUID[ACCOUNTS];
+        long[] initial = new long[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = UUID.randomUUID();
+            storage.createAccount(accounts[i], "player" + i);
+            initial[i] = storage.getBalance(accounts[i]);
+        }
+
+        // Net change each account should have seen, counting only operations storage accepted
+        AtomicLongArray expected = new AtomicLongArray(ACCOUNTS);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            workers.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int op = 0; op < OPERATIONS; op++) {
+                    int a = random.nextInt(ACCOUNTS);
+                    int b = random.nextInt(ACCOUNTS);
+                    long units = random.nextLong(1, 5000);
+                    switch (random.nextInt(4)) {
+                        case 0 -> {
+                            if (storage.applyDelta(accounts[a], units) != null) {
+                                expected.addAndGet(a, units);
+                            }
+                        }
+                        case 1 -> {
+                            if (storage.applyDelta(accounts[a], -units) != null) {
+                                expected.addAndGet(a, -units);
+                            }
+                        }
+                        case 2 -> {
+                            if (a != b && storage.transfer(accounts[a], accounts[b], units) != null) {
+                                expected.addAndGet(a, -units);
+                                expected.addAndGet(b, units);
+                            }
+                        }
+                        default -> {
+                            // A short-lived account that takes money out and is deleted with it
+                            UUID temp = UUID.randomUUID();
+                            storage.createAccount(temp, "temp" + thread + "_" + op % 100);
+                            TransferResult moved = storage.transfer(accounts[a], temp, units);
+                            if (moved != null) {
+                                expected.addAndGet(a, -units);
+                            }
+                            storage.deleteAccount(temp);
+                            assertNull(storage.applyDelta(temp, units), "deleted accounts must not be recreated");
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        long total = 0;
+        long expectedTotal = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            long balance = storage.getBalance(accounts[i]);
+            assertEquals(initial[i] + expected.get(i), balance, "balance of account " + i);
+            assertTrue(balance >= 0, "balance of account " + i + " went negative");
+            total += balance;
+            expectedTotal += initial[i] + expected.get(i);
+        }
+        assertEquals(expectedTotal, total);
+
+        // Everything must survive a restart, whether from the snapshot or the journal
+        storage.save();
+        JsonStorage reloaded = new JsonStorage(manager);
+        reloaded.load();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            AccountData data = reloaded.getAccount(accounts[i]);
+            assertNotNull(data);
+            assertEquals(initial[i] + expected.get(i), data.units, "reloaded balance of account " + i);
+        }
+        reloaded.save();
+    }
+}